@@ -0,0 +1,150 @@
+package me.duras.octosigndss;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+
+import me.duras.octosigndss.trust.TrustLoader;
+
+/**
+ * Documents, token and host answers shared by the benchmarks
+ */
+final class BenchmarkFixtures {
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Creates context of an operation answering like the host, without the trusted lists
+     *
+     * @param request answers of the host
+     */
+    static Context createContext(Request request) {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        return new OfflineContext().forOperation(request, discard, discard);
+    }
+
+    /**
+     * Creates PKCS #12 file with a throwaway key whose certificate is from Slovakia
+     */
+    static File createKeyStore(File directory) throws IOException, GeneralSecurityException {
+        return SelfSignedKeys.createKeyStore(new File(directory, "benchmark.p12"),
+                "CN=Octosign Benchmark, O=Octosign, C=SK", OperationWarmup.PASSWORD.toCharArray());
+    }
+
+    /**
+     * Creates document to sign of roughly the given size
+     *
+     * @param directory directory of the document
+     * @param extension pdf or xml
+     * @param size      size of the document in bytes
+     */
+    static File createDocument(File directory, String extension, int size) throws IOException {
+        File file = new File(directory, "document-" + size + "." + extension);
+        if (extension.equals("pdf")) {
+            try (PDDocument pdf = new PDDocument()) {
+                // Content stream of the page is padded by comments to the requested size
+                PDPage page = new PDPage();
+                page.setContents(new PDStream(pdf, new ByteArrayInputStream(padding("% ", "\n", size))));
+                pdf.addPage(page);
+                pdf.save(file);
+            }
+        } else {
+            byte[] items = padding("<item>", "</item>\n", size);
+            Files.write(file.toPath(), ("<document>\n" + new String(items, StandardCharsets.US_ASCII) + "</document>\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        return file;
+    }
+
+    private static byte[] padding(String start, String end, int size) {
+        StringBuilder padding = new StringBuilder(size + 100);
+        while (padding.length() < size) {
+            padding.append(start).append("octosign benchmark content").append(end);
+        }
+
+        return padding.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Answers the questions of the operations as the host would
+     */
+    static class BenchmarkRequest extends Request {
+        private final Map<String, String> options = new HashMap<>();
+
+        private final File output;
+
+        /**
+         * @param pkcsPath     path to the PKCS #12 file
+         * @param xmlPackaging packaging of XML signatures
+         * @param output       file the signed document is saved to
+         */
+        BenchmarkRequest(String pkcsPath, String xmlPackaging, File output) {
+            super(null, null);
+            this.options.put("pkcsPath", pkcsPath);
+            this.options.put("xmlPackaging", xmlPackaging);
+            this.output = output;
+        }
+
+        @Override
+        public String prompt(String promptType, String question, String defaultValue) {
+            if (promptType.equals("password")) {
+                return OperationWarmup.PASSWORD;
+            } else if (promptType.equals("save")) {
+                return output.getPath();
+            }
+
+            return defaultValue;
+        }
+
+        @Override
+        public String prompt(String promptType, String question, String defaultValue, Map<String, String> options) {
+            return options.isEmpty() ? defaultValue : options.keySet().iterator().next();
+        }
+
+        @Override
+        public String option(String id) {
+            return options.get(id);
+        }
+
+        @Override
+        public Map<String, String> options(List<String> ids) {
+            return new HashMap<>(options);
+        }
+    }
+
+    /**
+     * Context validating without the trusted lists, so nothing is downloaded
+     */
+    private static class OfflineContext extends Context {
+        private final TrustLoader trustLoader = new TrustLoader() {
+            @Override
+            public synchronized void load(Set<String> requiredCountries) {
+                // Nothing is trusted
+            }
+        };
+
+        private OfflineContext() {
+            super(new Scanner(""));
+        }
+
+        @Override
+        public synchronized TrustLoader getTrustLoader() {
+            return trustLoader;
+        }
+    }
+}
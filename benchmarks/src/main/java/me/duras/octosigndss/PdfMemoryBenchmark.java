@@ -0,0 +1,180 @@
+package me.duras.octosigndss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore.PasswordProtection;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.enumerations.SignatureLevel;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.model.SignatureValue;
+import eu.europa.esig.dss.model.ToBeSigned;
+import eu.europa.esig.dss.pades.PAdESSignatureParameters;
+import eu.europa.esig.dss.pades.signature.PAdESService;
+import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+import eu.europa.esig.dss.token.Pkcs12SignatureToken;
+import eu.europa.esig.dss.validation.CommonCertificateVerifier;
+import eu.europa.esig.dss.validation.SignedDocumentValidator;
+
+/**
+ * Peak heap use of PAdES signing and validation by the PDF size
+ *
+ * Uses the DSS services directly, outside of the {@link MemoryBudget}. Each
+ * invocation starts after a garbage collection and reports the peak heap in
+ * megabytes as the {@code peakHeap} counter, comparable to the
+ * {@link MemoryBudget#HEAP_PER_BYTE} estimate. Larger sizes need a larger
+ * heap, e.g. {@code -jvmArgs -Xmx4g}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PdfMemoryBenchmark {
+    /**
+     * Size of the PDF in megabytes
+     */
+    @Param({ "10", "50", "100", "200" })
+    public int size;
+
+    private File directory;
+
+    private File pdf;
+
+    private File signedPdf;
+
+    private Pkcs12SignatureToken token;
+
+    private DSSPrivateKeyEntry privateKey;
+
+    /**
+     * Peak heap of the last invocation
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class PeakHeap {
+        public long peakHeap;
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+
+        void record() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+
+            peakHeap = peak / 1024 / 1024;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GeneralSecurityException {
+        directory = Files.createTempDirectory("octosign-benchmark").toFile();
+        File keyStore = BenchmarkFixtures.createKeyStore(directory);
+        token = new Pkcs12SignatureToken(keyStore.getPath(),
+                new PasswordProtection(OperationWarmup.PASSWORD.toCharArray()));
+        privateKey = token.getKeys().get(0);
+
+        pdf = createPdf(new File(directory, size + ".pdf"), size);
+        signedPdf = new File(directory, size + "-signed.pdf");
+        sign(signedPdf);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        token.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void sign(PeakHeap peakHeap) throws IOException {
+        sign(new File(directory, size + "-benchmark.pdf"));
+        peakHeap.record();
+    }
+
+    @Benchmark
+    public void validate(PeakHeap peakHeap) {
+        SignedDocumentValidator validator = SignedDocumentValidator.fromDocument(new FileDocument(signedPdf));
+        validator.setCertificateVerifier(new CommonCertificateVerifier());
+        validator.validateDocument();
+        peakHeap.record();
+    }
+
+    private void sign(File output) throws IOException {
+        PAdESSignatureParameters parameters = new PAdESSignatureParameters();
+        parameters.setSignatureLevel(SignatureLevel.PAdES_BASELINE_B);
+        parameters.setDigestAlgorithm(DigestAlgorithm.SHA256);
+        parameters.setSigningCertificate(privateKey.getCertificate());
+        parameters.setCertificateChain(privateKey.getCertificateChain());
+        PAdESService service = new PAdESService(new CommonCertificateVerifier());
+        ToBeSigned dataToSign = service.getDataToSign(new FileDocument(pdf), parameters);
+        SignatureValue signatureValue = token.sign(dataToSign, DigestAlgorithm.SHA256, privateKey);
+        DSSDocument signed = service.signDocument(new FileDocument(pdf), parameters, signatureValue);
+        signed.save(output.getPath());
+    }
+
+    /**
+     * Creates PDF with a page of filler content per megabyte
+     */
+    private static File createPdf(File file, int megabytes) throws IOException {
+        byte[] line = "% filler content of the benchmark document\n".getBytes(StandardCharsets.US_ASCII);
+        try (PDDocument document = new PDDocument()) {
+            for (int page = 0; page < megabytes; page++) {
+                PDPage pdfPage = new PDPage();
+                PDStream content = new PDStream(document);
+                try (OutputStream out = content.createOutputStream()) {
+                    for (int written = 0; written < 1024 * 1024; written += line.length) {
+                        out.write(line);
+                    }
+                }
+                pdfPage.setContents(content);
+                document.addPage(pdfPage);
+            }
+
+            document.save(file);
+        }
+
+        return file;
+    }
+}
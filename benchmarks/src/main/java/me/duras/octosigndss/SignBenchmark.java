@@ -0,0 +1,71 @@
+package me.duras.octosigndss;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signing of one document by the PKCS #12 token, without a timestamp
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignBenchmark {
+    /**
+     * PAdES of a PDF, enveloped XAdES or XAdES in ASiC-E of an XML
+     */
+    @Param({ "pades", "xades", "asice" })
+    public String format;
+
+    @Param({ "10240", "1048576", "16777216" })
+    public int size;
+
+    private File directory;
+
+    private File document;
+
+    private Context context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GeneralSecurityException {
+        directory = Files.createTempDirectory("octosign-benchmark").toFile();
+        File keyStore = BenchmarkFixtures.createKeyStore(directory);
+        document = BenchmarkFixtures.createDocument(directory, format.equals("pades") ? "pdf" : "xml", size);
+
+        String output = format.equals("asice") ? "signed.sce" : "signed-" + document.getName();
+        context = BenchmarkFixtures.createContext(new BenchmarkFixtures.BenchmarkRequest(keyStore.getPath(),
+                format.equals("asice") ? "asice" : "enveloped", new File(directory, output)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void sign() {
+        new OperationSign(context).run(document.getPath());
+    }
+}
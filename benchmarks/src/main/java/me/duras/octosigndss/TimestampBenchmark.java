@@ -0,0 +1,80 @@
+package me.duras.octosigndss;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.service.http.commons.TimestampDataLoader;
+import eu.europa.esig.dss.service.tsp.OnlineTSPSource;
+import eu.europa.esig.dss.spi.x509.tsp.TimestampBinary;
+
+/**
+ * Timestamps per second against the local stand-in TSP
+ *
+ * Compares the default DSS loader used by one thread, as the signing did
+ * before, with the pooled loader shared by the finishing threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimestampBenchmark {
+    /**
+     * Response delay of the TSP in milliseconds
+     */
+    @Param({ "5" })
+    public long delay;
+
+    private LocalTSPServer server;
+
+    private OnlineTSPSource defaultSource;
+
+    private OnlineTSPSource pooledSource;
+
+    private byte[] digest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new LocalTSPServer();
+        server.setDelay(delay);
+
+        defaultSource = new OnlineTSPSource(server.getUrl(), new TimestampDataLoader());
+        pooledSource = new OnlineTSPSource(server.getUrl(), new PooledTimestampDataLoader(4, 3, 100));
+        digest = MessageDigest.getInstance("SHA-256").digest("benchmark".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public TimestampBinary defaultLoader() {
+        return defaultSource.getTimeStampResponse(DigestAlgorithm.SHA256, digest);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public TimestampBinary pooledLoader() {
+        return pooledSource.getTimeStampResponse(DigestAlgorithm.SHA256, digest);
+    }
+}
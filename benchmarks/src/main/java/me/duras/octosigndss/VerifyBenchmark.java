@@ -0,0 +1,76 @@
+package me.duras.octosigndss;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Verification of one signed document including the report, without the trusted lists
+ *
+ * Signed fixtures are created by the signing operation when the trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VerifyBenchmark {
+    /**
+     * PAdES of a PDF, enveloped XAdES or XAdES in ASiC-E of an XML
+     */
+    @Param({ "pades", "xades", "asice" })
+    public String format;
+
+    @Param({ "10240", "1048576" })
+    public int size;
+
+    private File directory;
+
+    private File signed;
+
+    private OperationVerify verify;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GeneralSecurityException {
+        directory = Files.createTempDirectory("octosign-benchmark").toFile();
+        File keyStore = BenchmarkFixtures.createKeyStore(directory);
+        File document = BenchmarkFixtures.createDocument(directory, format.equals("pades") ? "pdf" : "xml", size);
+
+        signed = new File(directory, format.equals("asice") ? "signed.sce" : "signed-" + document.getName());
+        Context context = BenchmarkFixtures.createContext(new BenchmarkFixtures.BenchmarkRequest(keyStore.getPath(),
+                format.equals("asice") ? "asice" : "enveloped", signed));
+        new OperationSign(context).run(document.getPath());
+        verify = new OperationVerify(context, "jsonl");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void verify() {
+        verify.run(Collections.singletonList(signed.getPath()));
+    }
+}
@@ -0,0 +1,138 @@
+package me.duras.octosigndss.trust;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.x509.CommonCertificateSource;
+import eu.europa.esig.dss.tsl.source.TLSource;
+import me.duras.octosigndss.SelfSignedKeys;
+
+/**
+ * Choosing of the TL sources of the required countries
+ *
+ * Compares the former scan of all signing certificates by a regular
+ * expression with building and querying of the {@link TLCountryIndex}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CountryFilterBenchmark {
+    private static final String[] TERRITORIES = { "AT", "BE", "BG", "CY", "CZ", "DE", "DK", "EE", "EL", "ES", "FI",
+            "FR", "HR", "HU", "IE", "IS", "IT", "LI", "LT", "LU", "LV", "MT", "NL", "NO", "PL", "PT", "RO", "SE", "SI",
+            "SK", "UK" };
+
+    private static final Pattern canonicalizedCountryPattern = Pattern.compile(".*,?c=(\\w+),?.*",
+            Pattern.CASE_INSENSITIVE);
+
+    @Param({ "SK", "SK,CZ,AT" })
+    public String countries;
+
+    /**
+     * Signing certificates of each TL
+     */
+    @Param({ "3" })
+    public int certificates;
+
+    private List<TLSource> sources;
+
+    private Map<String, String> territoriesByUrl;
+
+    private TLCountryIndex index;
+
+    private Set<String> requiredCountries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPair keyPair = SelfSignedKeys.generateKeyPair("EC", 256);
+
+        sources = new ArrayList<>();
+        territoriesByUrl = new HashMap<>();
+        for (String territory : TERRITORIES) {
+            CommonCertificateSource certificateSource = new CommonCertificateSource();
+            for (int i = 0; i < certificates; i++) {
+                certificateSource.addCertificate(createCertificate(keyPair, territory, i));
+            }
+
+            TLSource source = new TLSource();
+            source.setUrl("https://benchmark.invalid/tl-" + territory + ".xml");
+            source.setCertificateSource(certificateSource);
+            sources.add(source);
+            territoriesByUrl.put(source.getUrl(), territory);
+        }
+
+        index = new TLCountryIndex(sources, territoriesByUrl);
+        requiredCountries = new HashSet<>(Arrays.asList(countries.split(",")));
+    }
+
+    /**
+     * Filtering done by every refresh before the index
+     */
+    @Benchmark
+    public List<TLSource> regexScan() {
+        return sources.stream().filter((TLSource source) -> {
+            for (CertificateToken cert : source.getCertificateSource().getCertificates()) {
+                Matcher matcher = canonicalizedCountryPattern.matcher(cert.getCanonicalizedSubject());
+                if (matcher.find() && requiredCountries.contains(matcher.group(1)))
+                    return true;
+            }
+            return false;
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Building of the index, done only when the LOTL changes
+     */
+    @Benchmark
+    public TLCountryIndex indexBuild() {
+        return new TLCountryIndex(sources, territoriesByUrl);
+    }
+
+    /**
+     * Filtering done by every refresh with the index
+     */
+    @Benchmark
+    public List<TLSource> indexLookup() {
+        return index.getSources(requiredCountries);
+    }
+
+    /**
+     * Building of the index from the certificates only, as for TLs without territory in the LOTL
+     */
+    @Benchmark
+    public TLCountryIndex indexBuildFromCertificates() {
+        return new TLCountryIndex(sources, Collections.emptyMap());
+    }
+
+    private CertificateToken createCertificate(KeyPair keyPair, String territory, int serial) throws Exception {
+        return new CertificateToken(SelfSignedKeys.createCertificate(keyPair, "CN=Benchmark " + territory
+                + " TL Signer " + serial + ", O=Benchmark, C=" + CountryExtractor.normalize(territory), serial));
+    }
+}
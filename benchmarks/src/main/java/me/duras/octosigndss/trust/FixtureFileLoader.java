@@ -0,0 +1,122 @@
+package me.duras.octosigndss.trust;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.enumerations.SignatureAlgorithm;
+import eu.europa.esig.dss.enumerations.SignatureLevel;
+import eu.europa.esig.dss.enumerations.SignaturePackaging;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.InMemoryDocument;
+import eu.europa.esig.dss.model.SignatureValue;
+import eu.europa.esig.dss.model.ToBeSigned;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.spi.DSSUtils;
+import eu.europa.esig.dss.spi.client.http.DSSFileLoader;
+import eu.europa.esig.dss.spi.x509.CertificateSource;
+import eu.europa.esig.dss.spi.x509.CommonCertificateSource;
+import eu.europa.esig.dss.validation.CommonCertificateVerifier;
+import eu.europa.esig.dss.xades.XAdESSignatureParameters;
+import eu.europa.esig.dss.xades.signature.XAdESService;
+import me.duras.octosigndss.SelfSignedKeys;
+
+/**
+ * Loads the checked-in LOTL and TL fixtures in place of the cached lists
+ *
+ * Fixtures are in the {@code tl} resources named by the last segment of their
+ * URL under {@link #BASE_URL}. They are signed when loaded by throwaway keys:
+ * every TL by its own key whose certificate replaces the placeholder in the
+ * LOTL pointer, the LOTL by a key trusted by {@link #getLotlCertificateSource()}.
+ */
+class FixtureFileLoader implements DSSFileLoader {
+    private static final long serialVersionUID = 4815624394861452853L;
+
+    static final String BASE_URL = "https://benchmark.invalid/";
+
+    static final String LOTL_URL = BASE_URL + "lotl.xml";
+
+    private static final String[] COUNTRIES = { "AT", "CZ", "DE", "HU", "PL", "SK" };
+
+    private final Map<String, byte[]> fixtures = new HashMap<>();
+
+    private final CommonCertificateSource lotlCertificateSource = new CommonCertificateSource();
+
+    FixtureFileLoader() throws IOException, GeneralSecurityException {
+        String lotl = read("lotl");
+        for (String country : COUNTRIES) {
+            KeyPair keyPair = SelfSignedKeys.generateKeyPair("RSA", 2048);
+            X509Certificate certificate = SelfSignedKeys.createCertificate(keyPair,
+                    "CN=Benchmark " + country + " TL Signer, O=Benchmark, C=" + country, 1);
+            lotl = lotl.replace("@CERTIFICATE-" + country + "@",
+                    Base64.getEncoder().encodeToString(certificate.getEncoded()));
+            fixtures.put(BASE_URL + "tl-" + country + ".xml", sign(read("tl-" + country), keyPair, certificate));
+        }
+
+        KeyPair keyPair = SelfSignedKeys.generateKeyPair("RSA", 2048);
+        X509Certificate certificate = SelfSignedKeys.createCertificate(keyPair,
+                "CN=Benchmark LOTL Signer, O=Benchmark, C=EU", 1);
+        lotlCertificateSource.addCertificate(new CertificateToken(certificate));
+        fixtures.put(LOTL_URL, sign(lotl, keyPair, certificate));
+    }
+
+    /**
+     * Returns certificate the LOTL fixture is signed with
+     */
+    CertificateSource getLotlCertificateSource() {
+        return lotlCertificateSource;
+    }
+
+    @Override
+    public DSSDocument getDocument(String url) throws DSSException {
+        byte[] fixture = fixtures.get(url);
+        if (fixture == null) {
+            throw new DSSException(String.format("Document '%s' is not a fixture", url));
+        }
+
+        return new InMemoryDocument(fixture, url.substring(BASE_URL.length()));
+    }
+
+    @Override
+    public boolean remove(String url) {
+        return false;
+    }
+
+    private static String read(String name) throws IOException {
+        try (InputStream in = FixtureFileLoader.class.getResourceAsStream("/tl/" + name + ".xml")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Signs the list by an enveloped XAdES signature as the list operators do
+     */
+    private static byte[] sign(String list, KeyPair keyPair, X509Certificate certificate)
+            throws GeneralSecurityException {
+        XAdESSignatureParameters parameters = new XAdESSignatureParameters();
+        parameters.setSignatureLevel(SignatureLevel.XAdES_BASELINE_B);
+        parameters.setSignaturePackaging(SignaturePackaging.ENVELOPED);
+        parameters.setDigestAlgorithm(DigestAlgorithm.SHA256);
+        parameters.setSigningCertificate(new CertificateToken(certificate));
+
+        XAdESService service = new XAdESService(new CommonCertificateVerifier());
+        DSSDocument document = new InMemoryDocument(list.getBytes(StandardCharsets.UTF_8));
+        ToBeSigned dataToSign = service.getDataToSign(document, parameters);
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(dataToSign.getBytes());
+        SignatureValue signatureValue = new SignatureValue(SignatureAlgorithm.RSA_SHA256, signature.sign());
+
+        return DSSUtils.toByteArray(service.signDocument(document, parameters, signatureValue));
+    }
+}
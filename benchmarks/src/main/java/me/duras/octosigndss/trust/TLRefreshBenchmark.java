@@ -0,0 +1,68 @@
+package me.duras.octosigndss.trust;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.esig.dss.spi.tsl.TLValidationJobSummary;
+import eu.europa.esig.dss.spi.tsl.TrustedListsCertificateSource;
+import eu.europa.esig.dss.tsl.source.LOTLSource;
+
+/**
+ * Offline refresh of the trusted lists by a new validation job
+ *
+ * Fixtures are signed by throwaway keys trusted by the LOTL source, so the
+ * lists are loaded, parsed and their signatures validated as usual.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TLRefreshBenchmark {
+    @Param({ "SK", "SK,CZ,AT", "SK,CZ,AT,DE,HU,PL" })
+    public String countries;
+
+    private FixtureFileLoader loader;
+
+    private Set<String> requiredCountries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GeneralSecurityException {
+        loader = new FixtureFileLoader();
+        requiredCountries = new HashSet<>(Arrays.asList(countries.split(",")));
+    }
+
+    @Benchmark
+    public TLValidationJobSummary offlineRefresh() {
+        LOTLSource lotl = new LOTLSource();
+        lotl.setUrl(FixtureFileLoader.LOTL_URL);
+        lotl.setCertificateSource(loader.getLotlCertificateSource());
+
+        // New job each time, otherwise the unchanged lists are not analyzed again
+        LazyTLValidationJob job = new LazyTLValidationJob(requiredCountries);
+        job.setOfflineDataLoader(loader);
+        job.setTrustedListCertificateSource(new TrustedListsCertificateSource());
+        job.setListOfTrustedListSources(lotl);
+        job.offlineRefresh();
+
+        return job.getSummary();
+    }
+}
@@ -0,0 +1,44 @@
+#!/usr/bin/env bash
+#
+# Compares backend start without and with the class data sharing archive
+#
+# Usage: benchmarks/startup.sh [dist directory] [runs]
+#
+# Each run starts a new JVM the way backend.yml does, once for the meta
+# operation measuring the bare start and once for the warmup operation
+# loading the signing and verification classes. Requires the distribution
+# built by dist.sh including sign.jsa.
+
+set -e
+
+DIST=${1:-./dist}
+RUNS=${2:-10}
+OPENS="--add-opens jdk.crypto.cryptoki/sun.security.pkcs11=ALL-UNNAMED --add-exports jdk.crypto.cryptoki/sun.security.pkcs11.wrapper=ALL-UNNAMED"
+
+cd "$DIST"
+if [ ! -f ./sign.jsa ]; then
+    echo "Class data sharing archive sign.jsa is missing, build the distribution using dist.sh" >&2
+    exit 1
+fi
+
+# Prints average and minimum wall time of the runs in milliseconds
+measure() {
+    local total=0
+    local min=
+    for ((i = 0; i < RUNS; i++)); do
+        local start=$(date +%s%N)
+        ./jdk/bin/java "$@" > /dev/null
+        local elapsed=$((($(date +%s%N) - start) / 1000000))
+        total=$((total + elapsed))
+        if [ -z "$min" ] || [ "$elapsed" -lt "$min" ]; then
+            min=$elapsed
+        fi
+    done
+
+    echo "avg $((total / RUNS)) ms, min $min ms"
+}
+
+for operation in meta warmup; do
+    echo "$operation cold: $(measure -Xshare:auto $OPENS -jar ./sign.jar $operation)"
+    echo "$operation cds:  $(measure -Xshare:auto -XX:SharedArchiveFile=./sign.jsa $OPENS -jar ./sign.jar $operation)"
+done
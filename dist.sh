@@ -13,3 +13,15 @@ cp -r ./target/preparedJDK ./dist/jdk
 cp -r ./target/dependency-jars ./dist/
 cp ./keystore.p12 ./dist/
 cp ./target/octosigndss*.jar ./dist/sign.jar
+
+# Record classes loaded by signing and verification into class data sharing archive used on start,
+# backend starts without it if it can't be created
+(
+    cd ./dist
+    OPENS="--add-opens jdk.crypto.cryptoki/sun.security.pkcs11=ALL-UNNAMED --add-exports jdk.crypto.cryptoki/sun.security.pkcs11.wrapper=ALL-UNNAMED"
+    if ./jdk/bin/java $OPENS -XX:DumpLoadedClassList=sign.classlist -jar ./sign.jar warmup; then
+        ./jdk/bin/java $OPENS -Xshare:dump -XX:SharedClassListFile=sign.classlist -XX:SharedArchiveFile=sign.jsa \
+            -cp ./sign.jar || rm -f sign.jsa
+    fi
+    rm -f sign.classlist
+)
@@ -5,6 +5,8 @@ import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -23,20 +25,108 @@ public class App {
         App.ensureUTF8SystemIO();
 
         if (args.length < 1) {
-            System.err.println("One of the operations is required: sign, verify, meta.");
+            System.err.println("One of the operations is required: sign, verify, meta, serve, warmup, sync-trust.");
             System.exit(1);
         }
 
-        if (args[0].equals("meta")) {
-            (new OperationMeta()).run();
-        } else if (args[0].equals("sign")) {
-            (new OperationSign(scanner)).run(args[1]);
-        } else if (args[0].equals("verify")) {
-            (new OperationVerify()).run(args[1]);
-        } else {
-            System.err.println("Unsupported operation " + args[0]);
-            System.exit(1);
+        Context context = new Context(scanner);
+        if (args[0].equals("serve")) {
+            try {
+                (new OperationServe(context)).run(App.getOption(args, "protocol", "lines"));
+            } catch (OperationException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+
+        System.exit(App.execute(context, args));
+    }
+
+    /**
+     * Executes one operation and returns its exit code
+     */
+    static int execute(Context context, String[] args) {
+        try {
+            if (args[0].equals("meta")) {
+                (new OperationMeta(context)).run();
+            } else if (args[0].equals("warmup")) {
+                (new OperationWarmup(context)).run();
+            } else if (args[0].equals("sync-trust")) {
+                List<String> paths = App.getPaths(args);
+                (new OperationSyncTrust(context)).run(paths.isEmpty() ? null : paths.get(0));
+            } else if (args[0].equals("sign")) {
+                if (App.hasFlag(args, "container")) {
+                    (new OperationSign(context)).runContainer(App.requirePaths(args));
+                } else {
+                    (new OperationSign(context)).run(App.requirePaths(args));
+                }
+            } else if (args[0].equals("verify")) {
+                String format = App.getOption(args, "format", "markdown");
+                (new OperationVerify(context, format)).run(App.requirePaths(args));
+            } else {
+                context.getErr().println("Unsupported operation " + args[0]);
+                return 1;
+            }
+        } catch (OperationException e) {
+            context.getErr().println(e.getMessage());
+            if (e.getCause() != null) {
+                context.getErr().println(e.getCause().getMessage());
+            }
+            return 1;
         }
+
+        return 0;
+    }
+
+    private static List<String> requirePaths(String[] args) {
+        List<String> paths = App.getPaths(args);
+        if (paths.isEmpty()) {
+            throw new OperationException("Path to the file is required.");
+        }
+
+        return paths;
+    }
+
+    /**
+     * Returns the arguments which are not options or flags
+     */
+    private static List<String> getPaths(String[] args) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                paths.add(args[i]);
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * Returns whether the flag given as --name is present
+     */
+    private static boolean hasFlag(String[] args, String name) {
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--" + name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns value of the option given as --name=value or the default value
+     */
+    private static String getOption(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith(prefix)) {
+                return args[i].substring(prefix.length());
+            }
+        }
+
+        return defaultValue;
     }
 
     private static void ensureUTF8SystemIO() {
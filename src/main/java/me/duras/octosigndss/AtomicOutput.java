@@ -0,0 +1,218 @@
+package me.duras.octosigndss;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.function.IntFunction;
+
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.FileDocument;
+
+/**
+ * Writes output files so that the target is either untouched or complete
+ *
+ * Content is streamed into a temporary file in the target directory, which
+ * then replaces the target by an atomic rename. Replaced target keeps its
+ * permissions, new files get the default ones. New targets can be also
+ * written without ever replacing an existing file. With the system property
+ * {@code octosign.output.fsync} the content is forced to the disk first and
+ * the directory after the rename, so the complete output survives a crash.
+ */
+final class AtomicOutput {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private AtomicOutput() {
+    }
+
+    interface Content {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    interface StreamContent {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes the document, files are transferred between the channels directly
+     */
+    static void write(Path target, DSSDocument document) throws IOException {
+        write(target, content(document));
+    }
+
+    /**
+     * Writes content produced into the stream
+     */
+    static void writeStream(Path target, StreamContent content) throws IOException {
+        write(target, streamContent(content));
+    }
+
+    /**
+     * Content of the document, files are transferred between the channels directly
+     */
+    static Content content(DSSDocument document) {
+        return (channel) -> {
+            if (document instanceof FileDocument) {
+                try (FileChannel source = FileChannel.open(((FileDocument) document).getFile().toPath(),
+                        StandardOpenOption.READ)) {
+                    long size = source.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += source.transferTo(position, size - position, channel);
+                    }
+                }
+            } else {
+                try (InputStream in = document.openStream()) {
+                    in.transferTo(Channels.newOutputStream(channel));
+                }
+            }
+        };
+    }
+
+    /**
+     * Content produced into the stream
+     */
+    static Content streamContent(StreamContent content) {
+        return (channel) -> {
+            OutputStream out = Channels.newOutputStream(channel);
+            content.writeTo(out);
+            out.flush();
+        };
+    }
+
+    static void write(Path target, Content content) throws IOException {
+        Path absoluteTarget = target.toAbsolutePath();
+        Path temporaryFile = createTemporaryFile(absoluteTarget);
+        try {
+            writeTemporaryFile(temporaryFile, content);
+
+            try {
+                Files.move(temporaryFile, absoluteTarget, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(absoluteTarget);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Writes the content into the first of the targets that doesn't exist
+     *
+     * Existing files are never replaced, not even the ones created by someone
+     * else while the content is written, the next target is used instead.
+     *
+     * @param targets targets in the same directory by the attempt, from 0
+     * @return the written target
+     */
+    static Path writeNew(IntFunction<Path> targets, Content content) throws IOException {
+        Path temporaryFile = createTemporaryFile(targets.apply(0).toAbsolutePath());
+        try {
+            writeTemporaryFile(temporaryFile, content);
+
+            for (int attempt = 0;; attempt++) {
+                Path target = targets.apply(attempt).toAbsolutePath();
+                try {
+                    publishNew(temporaryFile, target);
+                    syncDirectory(target);
+                    return target;
+                } catch (FileAlreadyExistsException e) {
+                    // Created meanwhile, the next target is tried
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Makes the complete temporary file visible as the target unless it exists
+     *
+     * Atomic move is a rename which replaces an existing target on POSIX
+     * systems, so a hard link is created instead, which fails atomically.
+     */
+    private static void publishNew(Path temporaryFile, Path target) throws IOException {
+        try {
+            Files.createLink(target, temporaryFile);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // File system without hard links, the move still refuses an existing target
+            Files.move(temporaryFile, target);
+        }
+    }
+
+    private static void writeTemporaryFile(Path temporaryFile, Content content) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            content.writeTo(channel);
+            if (isFsync()) {
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * Forces the directory entry of the written target to the disk
+     *
+     * Directories can't be opened on Windows, so this step is skipped there.
+     */
+    private static void syncDirectory(Path target) {
+        if (!isFsync()) {
+            return;
+        }
+
+        try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Not supported by the platform
+        }
+    }
+
+    private static boolean isFsync() {
+        return Boolean.getBoolean("octosign.output.fsync");
+    }
+
+    /**
+     * Creates the temporary file next to the target with the permissions the
+     * target has or would get when created directly
+     */
+    private static Path createTemporaryFile(Path target) throws IOException {
+        Path temporaryFile;
+        while (true) {
+            temporaryFile = target.resolveSibling(
+                    "." + target.getFileName() + Long.toUnsignedString(RANDOM.nextLong()) + ".tmp");
+            try {
+                // Unlike a temporary file, it's created with the permissions given by the umask
+                Files.createFile(temporaryFile);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Next random name
+            }
+        }
+
+        if (Files.exists(target)) {
+            try {
+                Files.setPosixFilePermissions(temporaryFile, Files.getPosixFilePermissions(target));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system, permissions are inherited from the directory
+            } catch (IOException e) {
+                Files.deleteIfExists(temporaryFile);
+                throw e;
+            }
+        }
+
+        return temporaryFile;
+    }
+}
@@ -0,0 +1,233 @@
+package me.duras.octosigndss;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+import eu.europa.esig.dss.service.crl.OnlineCRLSource;
+import eu.europa.esig.dss.service.ocsp.OnlineOCSPSource;
+import eu.europa.esig.dss.service.tsp.OnlineTSPSource;
+import eu.europa.esig.dss.spi.x509.tsp.TSPSource;
+import eu.europa.esig.dss.validation.CertificateVerifier;
+import eu.europa.esig.dss.validation.CommonCertificateVerifier;
+import me.duras.octosigndss.trust.CacheDirectory;
+import me.duras.octosigndss.trust.CachingAIADataLoader;
+import me.duras.octosigndss.trust.CachingCRLDataLoader;
+import me.duras.octosigndss.trust.CachingOCSPDataLoader;
+import me.duras.octosigndss.trust.ResponseCache;
+import me.duras.octosigndss.trust.TrustLoader;
+
+/**
+ * State shared by all operations executed within one backend process
+ *
+ * Everything expensive to create is created lazily and kept, so the operations
+ * that follow the first one in the serve mode start warm. Operations running
+ * concurrently get their own context with their own channel to the host,
+ * sharing everything else with the context of the process.
+ */
+public class Context {
+    private static final long REVOCATION_MEMORY_CACHE_SIZE = 64L * 1024 * 1024;
+    private static final long REVOCATION_DISK_CACHE_SIZE = 512L * 1024 * 1024;
+    private static final long AIA_MEMORY_CACHE_SIZE = 16L * 1024 * 1024;
+    private static final long AIA_DISK_CACHE_SIZE = 64L * 1024 * 1024;
+
+    private final Scanner scanner;
+
+    private final Context parent;
+
+    private final Request request;
+
+    private final PrintStream out;
+
+    private final PrintStream err;
+
+    private TrustLoader trustLoader;
+
+    private CertificateVerifier certificateVerifier;
+
+    private final Map<String, TSPSource> tspSources = new HashMap<>();
+
+    private PooledTimestampDataLoader timestampDataLoader;
+
+    private KeyCache keyCache;
+
+    private MemoryBudget pdfMemoryBudget;
+
+    private OptionCache optionCache;
+
+    public Context(Scanner scanner) {
+        this.scanner = scanner;
+        this.parent = null;
+        this.request = new Request(scanner);
+        this.out = System.out;
+        this.err = System.err;
+    }
+
+    /**
+     * Creates context independent of the backend process, with its own options
+     *
+     * @param request     prompts and options of the operations
+     * @param out         results of the operations
+     * @param err         errors of the operations
+     * @param trustLoader loader of the trusted lists used by the operations
+     */
+    public Context(Request request, PrintStream out, PrintStream err, TrustLoader trustLoader) {
+        this.scanner = null;
+        this.parent = null;
+        this.request = request;
+        this.out = out;
+        this.err = err;
+        this.trustLoader = trustLoader;
+    }
+
+    private Context(Context parent, Request request, PrintStream out, PrintStream err) {
+        this.scanner = parent.scanner;
+        this.parent = parent;
+        this.request = request;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Creates context of one operation with its own channel to the host
+     *
+     * @param request prompts and options of the operation
+     * @param out     results of the operation
+     * @param err     errors of the operation
+     */
+    public Context forOperation(Request request, PrintStream out, PrintStream err) {
+        return new Context(this.parent != null ? this.parent : this, request, out, err);
+    }
+
+    public Scanner getScanner() {
+        return this.scanner;
+    }
+
+    public Request getRequest() {
+        return this.request;
+    }
+
+    public PrintStream getOut() {
+        return this.out;
+    }
+
+    public PrintStream getErr() {
+        return this.err;
+    }
+
+    /**
+     * Returns value of the option set by the host
+     *
+     * Values are kept until the host signals a change of the settings, in the
+     * JSON lines protocol all of them are asked at once.
+     */
+    public String getOption(String name) {
+        return getOptionCache().get(this.request, name);
+    }
+
+    public synchronized OptionCache getOptionCache() {
+        if (this.parent != null) {
+            return this.parent.getOptionCache();
+        }
+
+        if (this.optionCache == null) {
+            this.optionCache = new OptionCache(OperationMeta.OPTIONS);
+        }
+
+        return this.optionCache;
+    }
+
+    public synchronized TrustLoader getTrustLoader() {
+        if (this.parent != null) {
+            return this.parent.getTrustLoader();
+        }
+
+        if (this.trustLoader == null) {
+            this.trustLoader = new TrustLoader();
+        }
+
+        return this.trustLoader;
+    }
+
+    /**
+     * Certificate verifier with online sources
+     *
+     * EU Trusted Certificate Lists are loaded lazily by the {@link TrustLoader}
+     * and provided to each validation, only countries required by the validated
+     * documents have to be loaded before validation.
+     */
+    public synchronized CertificateVerifier getCertificateVerifier() {
+        if (this.parent != null) {
+            return this.parent.getCertificateVerifier();
+        }
+
+        if (this.certificateVerifier == null) {
+            CertificateVerifier cv = new CommonCertificateVerifier();
+            // Capability to download resources from AIA, cached including the failures
+            cv.setDataLoader(new CachingAIADataLoader(aiaCache()));
+            // Capability to request OCSP Responders and download CRL, both cached until next update
+            ResponseCache revocationCache = revocationCache();
+            cv.setOcspSource(new OnlineOCSPSource(new CachingOCSPDataLoader(revocationCache)));
+            cv.setCrlSource(new OnlineCRLSource(new CachingCRLDataLoader(revocationCache)));
+            this.certificateVerifier = cv;
+        }
+
+        return this.certificateVerifier;
+    }
+
+    /**
+     * TSP source of the given URL, all of them share one pool of connections
+     */
+    public synchronized TSPSource getTspSource(String tspUrl) {
+        if (this.parent != null) {
+            return this.parent.getTspSource(tspUrl);
+        }
+
+        if (this.timestampDataLoader == null) {
+            this.timestampDataLoader = new PooledTimestampDataLoader();
+        }
+
+        return this.tspSources.computeIfAbsent(tspUrl, (url) -> new OnlineTSPSource(url, this.timestampDataLoader));
+    }
+
+    public synchronized KeyCache getKeyCache() {
+        if (this.parent != null) {
+            return this.parent.getKeyCache();
+        }
+
+        if (this.keyCache == null) {
+            this.keyCache = new KeyCache(new File(CacheDirectory.get(), "pkcs11-keys.properties"));
+        }
+
+        return this.keyCache;
+    }
+
+    /**
+     * Budget of heap memory shared by all concurrent PDF signing and verification
+     */
+    public synchronized MemoryBudget getPdfMemoryBudget() {
+        if (this.parent != null) {
+            return this.parent.getPdfMemoryBudget();
+        }
+
+        if (this.pdfMemoryBudget == null) {
+            this.pdfMemoryBudget = MemoryBudget.fromSystemProperties();
+        }
+
+        return this.pdfMemoryBudget;
+    }
+
+    private ResponseCache revocationCache() {
+        // Private to the user, a planted response would be accepted as a valid revocation status
+        File revocationCache = new File(CacheDirectory.get(), "revocation");
+        return new ResponseCache(revocationCache, REVOCATION_MEMORY_CACHE_SIZE, REVOCATION_DISK_CACHE_SIZE);
+    }
+
+    private ResponseCache aiaCache() {
+        // Private to the user, a planted issuer certificate would be used for the chain building
+        File aiaCache = new File(CacheDirectory.get(), "aia");
+        return new ResponseCache(aiaCache, AIA_MEMORY_CACHE_SIZE, AIA_DISK_CACHE_SIZE);
+    }
+}
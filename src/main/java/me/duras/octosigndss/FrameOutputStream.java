@@ -0,0 +1,55 @@
+package me.duras.octosigndss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output of one operation sent to the host as frames
+ *
+ * Everything written since the last flush is sent as one frame, so a result
+ * block printed and flushed at once arrives in one piece.
+ */
+class FrameOutputStream extends OutputStream {
+    private final FrameWriter writer;
+
+    private final String type;
+
+    private final String operationId;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    /**
+     * @param writer      writer of the frames
+     * @param type        type of the frames, output or error
+     * @param operationId id of the operation
+     */
+    FrameOutputStream(FrameWriter writer, String type, String operationId) {
+        this.writer = writer;
+        this.type = type;
+        this.operationId = operationId;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        buffer.write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        buffer.write(b, off, len);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (buffer.size() > 0) {
+            writer.output(type, operationId, buffer.toString(StandardCharsets.UTF_8));
+            buffer.reset();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,283 @@
+package me.duras.octosigndss;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads frames of the JSON lines protocol from the host
+ *
+ * Each line is one flat JSON object with string, number, boolean or null
+ * values and arrays of strings. Lines are read and decoded into buffers kept
+ * between the frames, only the values themselves are allocated.
+ */
+class FrameReader {
+    private final InputStream in;
+
+    private final byte[] input = new byte[8192];
+
+    private int inputPosition = 0;
+
+    private int inputLength = 0;
+
+    private ByteBuffer line = ByteBuffer.allocate(8192);
+
+    private CharBuffer chars = CharBuffer.allocate(8192);
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final StringBuilder value = new StringBuilder();
+
+    private int position;
+
+    FrameReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next frame, skipping empty lines
+     *
+     * @return the frame or null at the end of the input
+     * @throws IOException if the line is not a valid frame
+     */
+    Frame next() throws IOException {
+        while (readLine()) {
+            decode();
+            skipWhitespace();
+            if (position < chars.limit()) {
+                return parse();
+            }
+        }
+
+        return null;
+    }
+
+    private boolean readLine() throws IOException {
+        line.clear();
+        while (true) {
+            if (inputPosition == inputLength) {
+                inputLength = in.read(input);
+                inputPosition = 0;
+                if (inputLength <= 0) {
+                    inputLength = 0;
+                    return line.position() > 0;
+                }
+            }
+
+            byte b = input[inputPosition++];
+            if (b == '\n') {
+                return true;
+            }
+
+            if (!line.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(line.capacity() * 2);
+                line.flip();
+                larger.put(line);
+                line = larger;
+            }
+            line.put(b);
+        }
+    }
+
+    private void decode() {
+        line.flip();
+        if (chars.capacity() < line.limit()) {
+            chars = CharBuffer.allocate(line.limit());
+        }
+
+        chars.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(line, chars, true);
+        if (!result.isError()) {
+            decoder.flush(chars);
+        }
+        chars.flip();
+        position = 0;
+    }
+
+    private Frame parse() throws IOException {
+        Frame frame = new Frame();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return frame;
+        }
+
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (peek() == '[') {
+                List<String> values = readArray();
+                if (key.equals("args")) {
+                    frame.args = values;
+                } else if (key.equals("values")) {
+                    frame.values = values;
+                }
+            } else {
+                String fieldValue = readValue();
+                if (key.equals("type")) {
+                    frame.type = fieldValue;
+                } else if (key.equals("id")) {
+                    frame.id = fieldValue;
+                } else if (key.equals("value")) {
+                    frame.value = fieldValue;
+                }
+            }
+
+            skipWhitespace();
+            char next = read();
+            if (next == '}') {
+                return frame;
+            } else if (next != ',') {
+                throw malformed();
+            }
+        }
+    }
+
+    private List<String> readArray() throws IOException {
+        List<String> values = new ArrayList<>();
+        expect('[');
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return values;
+        }
+
+        while (true) {
+            skipWhitespace();
+            values.add(readValue());
+            skipWhitespace();
+            char next = read();
+            if (next == ']') {
+                return values;
+            } else if (next != ',') {
+                throw malformed();
+            }
+        }
+    }
+
+    /**
+     * Reads string, number, boolean or null, the latter as null and others as text
+     */
+    private String readValue() throws IOException {
+        if (peek() == '"') {
+            return readString();
+        }
+
+        int start = position;
+        while (position < chars.limit() && ",}] \t\r".indexOf(chars.get(position)) < 0) {
+            position++;
+        }
+        if (start == position) {
+            throw malformed();
+        }
+
+        String literal = chars.subSequence(start, position).toString();
+        return literal.equals("null") ? null : literal;
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        value.setLength(0);
+        while (true) {
+            char c = read();
+            if (c == '"') {
+                return value.toString();
+            } else if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+
+            char escaped = read();
+            switch (escaped) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'u':
+                    if (position + 4 > chars.limit()) {
+                        throw malformed();
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(chars.subSequence(position, position + 4).toString(), 16));
+                    } catch (NumberFormatException e) {
+                        throw malformed();
+                    }
+                    position += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < chars.limit() && Character.isWhitespace(chars.get(position))) {
+            position++;
+        }
+    }
+
+    private char peek() throws IOException {
+        if (position >= chars.limit()) {
+            throw malformed();
+        }
+
+        return chars.get(position);
+    }
+
+    private char read() throws IOException {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (read() != expected) {
+            throw malformed();
+        }
+    }
+
+    private IOException malformed() {
+        return new IOException("Malformed frame at character " + position);
+    }
+
+    /**
+     * One message from the host
+     */
+    static class Frame {
+        String type;
+
+        String id;
+
+        String value;
+
+        List<String> args = Collections.emptyList();
+
+        List<String> values = Collections.emptyList();
+    }
+}
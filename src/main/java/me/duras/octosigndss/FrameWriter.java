@@ -0,0 +1,101 @@
+package me.duras.octosigndss;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes frames of the JSON lines protocol to the host
+ *
+ * Frames of all operations go through one writer, each of them as a whole line.
+ */
+class FrameWriter {
+    private final PrintStream out;
+
+    private final StringBuilder frame = new StringBuilder();
+
+    FrameWriter(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes output of the operation, type is output or error
+     */
+    synchronized void output(String type, String operationId, String data) {
+        start(type, operationId);
+        frame.append(",\"data\":");
+        Json.append(frame, data);
+        end();
+    }
+
+    synchronized void prompt(String operationId, String id, String promptType, String question,
+            String defaultValue, Map<String, String> options) {
+        start("prompt", operationId);
+        frame.append(",\"id\":");
+        Json.append(frame, id);
+        frame.append(",\"promptType\":");
+        Json.append(frame, promptType);
+        frame.append(",\"question\":");
+        Json.append(frame, question);
+        frame.append(",\"default\":");
+        Json.append(frame, defaultValue);
+        if (options != null) {
+            frame.append(",\"options\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                if (!first) {
+                    frame.append(',');
+                }
+                Json.append(frame, option.getKey()).append(':');
+                Json.append(frame, option.getValue());
+                first = false;
+            }
+            frame.append('}');
+        }
+        end();
+    }
+
+    synchronized void option(String operationId, String id, String name) {
+        start("option", operationId);
+        frame.append(",\"id\":");
+        Json.append(frame, id);
+        frame.append(",\"name\":");
+        Json.append(frame, name);
+        end();
+    }
+
+    synchronized void options(String operationId, String id, List<String> names) {
+        start("options", operationId);
+        frame.append(",\"id\":");
+        Json.append(frame, id);
+        frame.append(",\"names\":[");
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                frame.append(',');
+            }
+            Json.append(frame, names.get(i));
+        }
+        frame.append(']');
+        end();
+    }
+
+    synchronized void exit(String operationId, int code) {
+        start("exit", operationId);
+        frame.append(",\"code\":").append(code);
+        end();
+    }
+
+    private void start(String type, String operationId) {
+        frame.setLength(0);
+        frame.append("{\"type\":");
+        Json.append(frame, type);
+        frame.append(",\"op\":");
+        Json.append(frame, operationId);
+    }
+
+    private void end() {
+        frame.append('}');
+        out.append(frame).append('\n');
+        out.flush();
+    }
+}
@@ -0,0 +1,151 @@
+package me.duras.octosigndss;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prompts and options of one operation exchanged as frames with the host
+ *
+ * Every question has its own id the answer refers to, so questions of several
+ * operations can be outstanding at the same time.
+ */
+class FramedRequest extends Request {
+    private static final AtomicLong questionIds = new AtomicLong();
+
+    private final FrameWriter writer;
+
+    private final String operationId;
+
+    private final PendingAnswers pendingAnswers;
+
+    /**
+     * @param writer         writer of the frames
+     * @param operationId    id of the operation asking
+     * @param pendingAnswers questions waiting for the answer, shared by all operations
+     */
+    FramedRequest(FrameWriter writer, String operationId, PendingAnswers pendingAnswers) {
+        super(null, null);
+        this.writer = writer;
+        this.operationId = operationId;
+        this.pendingAnswers = pendingAnswers;
+    }
+
+    @Override
+    public String prompt(String promptType, String question, String defaultValue) {
+        return this.prompt(promptType, question, defaultValue, null);
+    }
+
+    @Override
+    public String prompt(String promptType, String question, String defaultValue, Map<String, String> options) {
+        String id = nextId();
+        CompletableFuture<FrameReader.Frame> answer = pendingAnswers.register(id);
+        writer.prompt(operationId, id, promptType, question, defaultValue, options);
+
+        return emptyToNull(await(id, answer).value);
+    }
+
+    @Override
+    public String option(String name) {
+        String id = nextId();
+        CompletableFuture<FrameReader.Frame> answer = pendingAnswers.register(id);
+        writer.option(operationId, id, name);
+
+        return emptyToNull(await(id, answer).value);
+    }
+
+    @Override
+    public boolean supportsOptions() {
+        return true;
+    }
+
+    /**
+     * Asks for values of many options in one frame, answered by values in the same order
+     */
+    @Override
+    public Map<String, String> options(List<String> names) {
+        String id = nextId();
+        CompletableFuture<FrameReader.Frame> answer = pendingAnswers.register(id);
+        writer.options(operationId, id, names);
+
+        List<String> values = await(id, answer).values;
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < names.size() && i < values.size(); i++) {
+            options.put(names.get(i), emptyToNull(values.get(i)));
+        }
+
+        return options;
+    }
+
+    private String nextId() {
+        return "q" + questionIds.incrementAndGet();
+    }
+
+    private FrameReader.Frame await(String id, CompletableFuture<FrameReader.Frame> answer) {
+        try {
+            return answer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationException("Operation was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new OperationException("Host didn't answer.", e.getCause());
+        } finally {
+            pendingAnswers.remove(id);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Questions of all operations waiting for their answers by their id
+     *
+     * Once closed, no answer can arrive anymore, so the pending questions and
+     * all the questions asked later fail right away.
+     */
+    static class PendingAnswers {
+        private final Map<String, CompletableFuture<FrameReader.Frame>> answers = new HashMap<>();
+
+        private boolean closed = false;
+
+        synchronized CompletableFuture<FrameReader.Frame> register(String id) {
+            CompletableFuture<FrameReader.Frame> answer = new CompletableFuture<>();
+            if (closed) {
+                answer.completeExceptionally(new IOException("Input ended before the question"));
+            } else {
+                answers.put(id, answer);
+            }
+
+            return answer;
+        }
+
+        /**
+         * Completes the question the answer belongs to, unknown answers are ignored
+         */
+        synchronized void complete(FrameReader.Frame frame) {
+            CompletableFuture<FrameReader.Frame> answer = answers.remove(frame.id);
+            if (answer != null) {
+                answer.complete(frame);
+            }
+        }
+
+        synchronized void remove(String id) {
+            answers.remove(id);
+        }
+
+        /**
+         * Fails the pending questions and all the following ones
+         */
+        synchronized void close() {
+            closed = true;
+            answers.values().forEach((answer) -> answer
+                    .completeExceptionally(new IOException("Input ended before the answer")));
+            answers.clear();
+        }
+    }
+}
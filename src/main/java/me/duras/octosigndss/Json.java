@@ -0,0 +1,55 @@
+package me.duras.octosigndss;
+
+/**
+ * Writing of JSON values used by the JSON lines outputs
+ */
+final class Json {
+    private Json() {
+    }
+
+    /**
+     * Returns the value as JSON string or null
+     */
+    static String string(String value) {
+        return append(new StringBuilder(), value).toString();
+    }
+
+    /**
+     * Appends the value as JSON string or null
+     */
+    static StringBuilder append(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+
+        return json.append('"');
+    }
+}
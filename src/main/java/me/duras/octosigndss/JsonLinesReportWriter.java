@@ -0,0 +1,68 @@
+package me.duras.octosigndss;
+
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import eu.europa.esig.dss.enumerations.Indication;
+import eu.europa.esig.dss.enumerations.SubIndication;
+import eu.europa.esig.dss.simplereport.SimpleReport;
+
+/**
+ * Writes results as JSON lines, one object per document
+ *
+ * Each line has the file, status and signatures with their indication,
+ * qualification, chain of trust and errors, for consumption by other programs.
+ */
+class JsonLinesReportWriter implements ReportWriter {
+    private final PrintStream out;
+
+    private boolean firstSignature;
+
+    JsonLinesReportWriter(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void start(String filePath, String status, boolean validated) {
+        firstSignature = true;
+        out.print("{\"file\":" + Json.string(filePath) + ",\"status\":" + Json.string(status)
+                + ",\"signatures\":[");
+    }
+
+    @Override
+    public void signature(SimpleReport report, String id) {
+        Indication indication = report.getIndication(id);
+        SubIndication subIndication = report.getSubIndication(id);
+        Date signingTime = report.getSigningTime(id);
+        List<String> chain = report.getCertificateChain(id).getCertificate().stream()
+                .map((cert) -> cert.getQualifiedName()).collect(Collectors.toList());
+
+        StringBuilder signature = new StringBuilder(firstSignature ? "{" : ",{");
+        signature.append("\"id\":").append(Json.string(id));
+        signature.append(",\"signedBy\":").append(Json.string(report.getSignedBy(id)));
+        signature.append(",\"indication\":").append(Json.string(indication != null ? indication.name() : null));
+        signature.append(",\"subIndication\":")
+                .append(Json.string(subIndication != null ? subIndication.name() : null));
+        signature.append(",\"signingTime\":")
+                .append(Json.string(signingTime != null ? signingTime.toInstant().toString() : null));
+        signature.append(",\"qualification\":").append(Json.string(report.getSignatureQualification(id).getLabel()));
+        signature.append(",\"chain\":").append(array(chain));
+        signature.append(",\"errors\":").append(array(report.getErrors(id)));
+        signature.append("}");
+
+        out.print(signature);
+        firstSignature = false;
+    }
+
+    @Override
+    public void end() {
+        out.println("]}");
+        out.flush();
+    }
+
+    private static String array(List<String> values) {
+        return values.stream().map(Json::string).collect(Collectors.joining(",", "[", "]"));
+    }
+}
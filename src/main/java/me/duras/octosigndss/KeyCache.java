@@ -0,0 +1,118 @@
+package me.duras.octosigndss;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import me.duras.octosigndss.trust.CacheDirectory;
+
+/**
+ * Persistent cache of the picker labels of keys on PKCS #11 tokens
+ *
+ * Labels are kept by the key alias for each token, identified by its serial
+ * number and label, so the certificate picker doesn't have to wait for all
+ * keys to be read from the card. Labels identify their owners, so the file is
+ * readable only by the current user.
+ */
+class KeyCache {
+    private final File file;
+
+    KeyCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns labels of the keys by their aliases or null if not cached
+     */
+    synchronized Map<String, String> get(String tokenId) {
+        Properties properties = read();
+        String prefix = tokenId + "|";
+        int count = Integer.parseInt(properties.getProperty(prefix + "count", "-1"));
+        if (count < 0) {
+            return null;
+        }
+
+        Map<String, String> labels = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String alias = properties.getProperty(prefix + i + ".alias");
+            String label = properties.getProperty(prefix + i + ".label");
+            if (alias == null || label == null) {
+                return null;
+            }
+
+            labels.put(alias, label);
+        }
+
+        return labels;
+    }
+
+    synchronized void put(String tokenId, Map<String, String> labels) {
+        Properties properties = read();
+        remove(properties, tokenId);
+
+        String prefix = tokenId + "|";
+        properties.setProperty(prefix + "count", String.valueOf(labels.size()));
+        int i = 0;
+        for (Map.Entry<String, String> label : labels.entrySet()) {
+            properties.setProperty(prefix + i + ".alias", label.getKey());
+            properties.setProperty(prefix + i + ".label", label.getValue());
+            i++;
+        }
+
+        write(properties);
+    }
+
+    synchronized void remove(String tokenId) {
+        Properties properties = read();
+        remove(properties, tokenId);
+        write(properties);
+    }
+
+    private void remove(Properties properties, String tokenId) {
+        properties.stringPropertyNames().stream().filter((name) -> name.startsWith(tokenId + "|"))
+                .forEach(properties::remove);
+    }
+
+    private Properties read() {
+        Properties properties = new Properties();
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                // Keys are read from the token again
+            }
+        }
+
+        return properties;
+    }
+
+    private void write(Properties properties) {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            temporaryFile.delete();
+            CacheDirectory.createPrivateFile(temporaryFile.toPath());
+            try (OutputStream out = new FileOutputStream(temporaryFile)) {
+                properties.store(out, null);
+            }
+
+            try {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // Cache is optional
+            temporaryFile.delete();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package me.duras.octosigndss;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import eu.europa.esig.dss.enumerations.Indication;
+import eu.europa.esig.dss.simplereport.SimpleReport;
+
+/**
+ * Writes results as the result blocks with translatable Markdown details
+ */
+class MarkdownReportWriter implements ReportWriter {
+    private final PrintStream out;
+
+    private final boolean withFile;
+
+    private boolean validated;
+
+    /**
+     * @param out      stream to write to
+     * @param withFile whether to identify the file after the status
+     */
+    MarkdownReportWriter(PrintStream out, boolean withFile) {
+        this.out = out;
+        this.withFile = withFile;
+    }
+
+    @Override
+    public void start(String filePath, String status, boolean validated) {
+        this.validated = validated;
+        out.println("--RESULT--");
+        out.println(status);
+        if (withFile) {
+            out.println("FILE:" + filePath);
+        }
+    }
+
+    @Override
+    public void signature(SimpleReport report, String id) {
+        StringBuilder details = new StringBuilder();
+        details.append("### t{Signed by} ").append(report.getSignedBy(id)).append("\n\n");
+        details.append("**t{Validity}**: t{").append(getHumanReadableIndication(report.getIndication(id)))
+                .append("}\n\n");
+        details.append("**t{Date and time}**: ").append(report.getSigningTime(id)).append("\n\n");
+        details.append("**t{Qualification}**: t{").append(report.getSignatureQualification(id).getLabel())
+                .append("}\n\n");
+        details.append("**t{Chain of trust}**: ").append(report.getCertificateChain(id).getCertificate().stream()
+                .map((cert) -> cert.getQualifiedName()).collect(Collectors.joining(" > "))).append("\n\n");
+
+        List<String> errors = report.getErrors(id);
+        if (errors.size() > 0) {
+            details.append("**t{Potential problems}**: \n\n");
+            int errorNumber = 1;
+            for (String err : errors) {
+                details.append(errorNumber).append(". ").append(err).append("\n\n");
+                errorNumber++;
+            }
+        }
+
+        details.append("\n\n");
+        out.print(details);
+    }
+
+    @Override
+    public void end() {
+        // Details of a validated document end by an empty line, even with no signatures
+        if (validated) {
+            out.println();
+        }
+        out.println("--RESULT--");
+        out.flush();
+    }
+
+    private String getHumanReadableIndication(Indication indication) {
+        switch (indication) {
+            case TOTAL_PASSED:
+            case PASSED:
+                return "Valid";
+
+            case TOTAL_FAILED:
+            case FAILED:
+                return "Invalid";
+
+            case INDETERMINATE:
+                return "Indeterminate";
+
+            default:
+                return "Unknown";
+        }
+    }
+}
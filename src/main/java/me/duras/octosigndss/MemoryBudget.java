@@ -0,0 +1,70 @@
+package me.duras.octosigndss;
+
+/**
+ * Budget of heap memory available to processing of PDF documents
+ *
+ * PDFBox as used by DSS keeps the whole document and its parsed objects in
+ * the heap. Every PDF operation reserves an estimate based on the file size
+ * before it starts, so concurrent operations wait for each other instead of
+ * running out of memory. Document larger than the whole budget waits until
+ * no other document is processed and then runs alone with the whole budget.
+ */
+class MemoryBudget {
+    /**
+     * Heap used per byte of the PDF while it's parsed and signed or validated
+     */
+    static final int HEAP_PER_BYTE = 4;
+
+    private final long budget;
+
+    private long reserved = 0;
+
+    /**
+     * @param budget bytes of heap available to PDF processing
+     */
+    MemoryBudget(long budget) {
+        this.budget = Math.max(1, budget);
+    }
+
+    /**
+     * Creates the budget configured by the system property
+     * {@code octosign.pdf.memory} in bytes, 3/4 of the maximum heap by default
+     */
+    static MemoryBudget fromSystemProperties() {
+        return new MemoryBudget(Long.getLong("octosign.pdf.memory", Runtime.getRuntime().maxMemory() / 4 * 3));
+    }
+
+    /**
+     * Waits until there is enough memory for the PDF of the given size
+     *
+     * @param fileSize size of the PDF in bytes
+     * @return reservation to close when the processing is done
+     */
+    Reservation reserve(long fileSize) throws InterruptedException {
+        long amount = Math.min(Math.max(1, fileSize) * HEAP_PER_BYTE, budget);
+
+        synchronized (this) {
+            while (reserved + amount > budget) {
+                wait();
+            }
+
+            reserved += amount;
+        }
+
+        return () -> release(amount);
+    }
+
+    synchronized long getReserved() {
+        return reserved;
+    }
+
+    private synchronized void release(long amount) {
+        reserved -= amount;
+        notifyAll();
+    }
+
+    interface Reservation extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,19 @@
+package me.duras.octosigndss;
+
+/**
+ * Failure of an operation that should be reported to the user
+ *
+ * Message is printed to the error output, followed by the message of the cause
+ * if there is one.
+ */
+public class OperationException extends RuntimeException {
+    private static final long serialVersionUID = 4601850325146843318L;
+
+    public OperationException(String message) {
+        super(message);
+    }
+
+    public OperationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,19 +1,37 @@
 package me.duras.octosigndss;
 
 import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 public class OperationMeta {
+    /**
+     * Names of all options announced to the host, asked from it at once
+     */
+    static final List<String> OPTIONS = Collections.unmodifiableList(Arrays.asList("pkcsPath", "tspUrl",
+            "xmlPackaging"));
+
+    private Context context;
+
+    public OperationMeta(Context context) {
+        this.context = context;
+    }
+
     public void run() {
+        PrintStream out = context.getOut();
         String pkcsDllPath = this.findPkcsDllPath();
         String defaultDllPath = pkcsDllPath == null ? "" : pkcsDllPath;
 
-        System.out.println("--RESULT--");
-        System.out.println("OK");
-        System.out.println("OPTIONS:pkcsPath\"PKCS #11/#12 Path\"(\"" + defaultDllPath
-                + "\") tspUrl\"Timestamping Server URL\"(\"http://timestamp.digicert.com\")");
-        System.out.println("--RESULT--");
-        System.exit(0);
+        out.println("--RESULT--");
+        out.println("OK");
+        out.println("OPTIONS:pkcsPath\"PKCS #11/#12 Path\"(\"" + defaultDllPath
+                + "\") tspUrl\"Timestamping Server URL\"(\"http://timestamp.digicert.com\")"
+                + " xmlPackaging\"XML Signature Packaging (enveloped, detached, asice)\"(\"enveloped\")");
+        out.println("--RESULT--");
+        out.flush();
     }
 
     private String findPkcsDllPath() {
@@ -0,0 +1,159 @@
+package me.duras.octosigndss;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running mode executing operations requested by the host
+ *
+ * In the default lines protocol, operations run one after another. Each
+ * operation is announced on the standard input as a block with the operation
+ * name on the first line and each argument on its own line:
+ *
+ * <pre>
+ * --OPERATION--
+ * verify
+ * /path/to/document.pdf
+ * --OPERATION--
+ * </pre>
+ *
+ * Operation then uses the usual prompts, options and results and is finished
+ * by an exit block with the exit code the process would otherwise end with.
+ *
+ * In the JSON lines protocol, every message is one JSON object per line with
+ * an id of the operation or question it belongs to, so several operations run
+ * concurrently:
+ *
+ * <pre>
+ * {"type":"operation","id":"1","args":["verify","/path/to/document.pdf"]}
+ * {"type":"answer","id":"q1","value":"answer to the prompt or option"}
+ * {"type":"answer","id":"q2","values":["values of the options","in the asked order"]}
+ * </pre>
+ *
+ * Backend answers by output, error, prompt and option frames of the operation
+ * and finishes it by an exit frame with its exit code. Values of the options
+ * are kept between the operations until the host requests the
+ * {@code settings} operation after their change. Trusted lists,
+ * certificate verifier and loaders stay warm in the shared {@link Context}
+ * between the operations. Once the input ends, questions of the running
+ * operations fail and the operations get a short time to finish.
+ */
+public class OperationServe {
+    private static final String CONCURRENCY_PROPERTY = "octosign.serve.concurrency";
+
+    private static final long SHUTDOWN_TIMEOUT = 30;
+
+    private Context context;
+
+    public OperationServe(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Serves operations using the given protocol, lines or jsonl
+     */
+    public void run(String protocol) {
+        if (protocol.equals("jsonl")) {
+            runFramed(System.in, System.out);
+        } else if (protocol.equals("lines")) {
+            run();
+        } else {
+            throw new OperationException("Unsupported protocol " + protocol);
+        }
+    }
+
+    public void run() {
+        Request request = new Request(context.getScanner());
+
+        String[] operation;
+        while ((operation = request.operation()) != null) {
+            request.exit(execute(context, operation));
+        }
+    }
+
+    void runFramed(InputStream in, PrintStream out) {
+        FrameReader reader = new FrameReader(in);
+        FrameWriter writer = new FrameWriter(out);
+        FramedRequest.PendingAnswers pendingAnswers = new FramedRequest.PendingAnswers();
+        int concurrency = Math.max(1, Integer.getInteger(CONCURRENCY_PROPERTY, 4));
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+
+        try {
+            FrameReader.Frame frame;
+            while ((frame = next(reader)) != null) {
+                if ("operation".equals(frame.type)) {
+                    String operationId = frame.id;
+                    String[] operation = frame.args.toArray(new String[0]);
+                    executor.execute(() -> executeFramed(writer, pendingAnswers, operationId, operation));
+                } else if ("answer".equals(frame.type)) {
+                    pendingAnswers.complete(frame);
+                } else if (frame.type != null) {
+                    context.getErr().println("Unsupported frame " + frame.type);
+                }
+            }
+        } finally {
+            // Operations waiting for answers can't get them anymore
+            pendingAnswers.close();
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private FrameReader.Frame next(FrameReader reader) {
+        while (true) {
+            try {
+                return reader.next();
+            } catch (IOException e) {
+                // Malformed frame is skipped, the following ones can still be served
+                context.getErr().println(e.getMessage());
+            }
+        }
+    }
+
+    private void executeFramed(FrameWriter writer, FramedRequest.PendingAnswers pendingAnswers, String operationId,
+            String[] operation) {
+        PrintStream out = new PrintStream(new FrameOutputStream(writer, "output", operationId), false,
+                StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new FrameOutputStream(writer, "error", operationId), true,
+                StandardCharsets.UTF_8);
+        Request request = new FramedRequest(writer, operationId, pendingAnswers);
+
+        int exitCode = execute(context.forOperation(request, out, err), operation);
+        out.flush();
+        err.flush();
+        writer.exit(operationId, exitCode);
+    }
+
+    private static int execute(Context context, String[] operation) {
+        if (operation.length == 0 || operation[0].equals("serve")) {
+            context.getErr().println("Unsupported operation " + String.join(" ", operation));
+            return 1;
+        }
+
+        if (operation[0].equals("settings")) {
+            // Host changed the settings, options are asked again by the next operation
+            context.getOptionCache().invalidate();
+            return 0;
+        }
+
+        try {
+            return App.execute(context, operation);
+        } catch (Exception e) {
+            // Unexpected failure of one operation can't take down the whole backend
+            context.getErr().println(e.getMessage());
+            return 1;
+        }
+    }
+}
@@ -1,12 +1,31 @@
 package me.duras.octosigndss;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.security.KeyStore.PasswordProtection;
 
 import javax.naming.ldap.LdapName;
@@ -15,54 +34,239 @@ import javax.naming.ldap.Rdn;
 import eu.europa.esig.dss.AbstractSignatureParameters;
 import eu.europa.esig.dss.asic.cades.ASiCWithCAdESSignatureParameters;
 import eu.europa.esig.dss.asic.cades.signature.ASiCWithCAdESService;
+import eu.europa.esig.dss.cades.CAdESSignatureParameters;
+import eu.europa.esig.dss.cades.signature.CAdESService;
 import eu.europa.esig.dss.enumerations.ASiCContainerType;
 import eu.europa.esig.dss.enumerations.DigestAlgorithm;
 import eu.europa.esig.dss.enumerations.SignatureLevel;
 import eu.europa.esig.dss.enumerations.SignaturePackaging;
 import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.DigestDocument;
 import eu.europa.esig.dss.model.FileDocument;
 import eu.europa.esig.dss.model.SignatureValue;
 import eu.europa.esig.dss.model.ToBeSigned;
 import eu.europa.esig.dss.pades.PAdESSignatureParameters;
 import eu.europa.esig.dss.pades.signature.PAdESService;
-import eu.europa.esig.dss.service.tsp.OnlineTSPSource;
 import eu.europa.esig.dss.signature.AbstractSignatureService;
 import eu.europa.esig.dss.token.AbstractKeyStoreTokenConnection;
 import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
 import eu.europa.esig.dss.token.MSCAPISignatureToken;
-import eu.europa.esig.dss.token.Pkcs11SignatureToken;
 import eu.europa.esig.dss.token.Pkcs12SignatureToken;
 import eu.europa.esig.dss.validation.CommonCertificateVerifier;
 import eu.europa.esig.dss.xades.XAdESSignatureParameters;
 import eu.europa.esig.dss.xades.signature.XAdESService;
 
 public class OperationSign {
-    private Scanner scanner;
+    private static final long STREAMING_THRESHOLD = 64L * 1024 * 1024;
 
-    public OperationSign(Scanner scanner) {
-        this.scanner = scanner;
+    private Context context;
+
+    private String xmlPackaging = "enveloped";
+
+    public OperationSign(Context context) {
+        this.context = context;
     }
 
     public void run(String filePath) {
-        Request request = new Request(scanner);
-        String pkcsPath = request.option("pkcsPath");
-        String tspUrl = request.option("tspUrl");
+        Request request = context.getRequest();
+        String tspUrl = context.getOption("tspUrl");
+        this.readXmlPackaging(request, Collections.singletonList(filePath));
+        File fileToSign = new File(filePath);
+
+        // Document is loaded while the token is being opened, they meet only when signing
+        Future<LoadedDocument> loading = this.startLoading(Collections.singletonList(fileToSign));
+
+        String outputPath = this.withLoading(loading, () -> this.withToken(request, (token) -> {
+            DSSPrivateKeyEntry privateKey = this.getPrivateKey(request, token);
+            PreparedDocument prepared = this.prepare(this.await(loading, "Reading of the file to sign failed:"),
+                    privateKey, tspUrl);
+            SignatureValue signatureValue = token.sign(prepared.dataToSign, prepared.parameters.getDigestAlgorithm(),
+                    privateKey);
+            DSSDocument signedDocument = this.finish(prepared, signatureValue);
+
+            // Detached signature must not replace the signed file
+            String defaultPath = prepared.detached
+                    ? new File(fileToSign.getAbsoluteFile().getParentFile(), getSignatureName(fileToSign)).getPath()
+                    : fileToSign.getAbsolutePath();
+            String path = request.prompt("save", "Save signed file as", defaultPath);
+
+            if (path == null) {
+                throw new OperationException("Signed file path was not chosen.");
+            }
+
+            // Make sure file extension is correct
+            if (prepared.container && !(path.endsWith(".sce") || path.endsWith(".asice"))) {
+                path += ".sce";
+            } else if (fileToSign.getName().endsWith(".pdf") && !path.endsWith(".pdf")) {
+                path += ".pdf";
+            } else if (fileToSign.getName().endsWith(".xml") && !path.endsWith(".xml")) {
+                path += ".xml";
+            }
+
+            this.save(prepared, signedDocument, path);
+            return path;
+        }));
+
+        PrintStream out = context.getOut();
+        out.println("--RESULT--");
+        out.println(outputPath);
+        out.println("--RESULT--");
+        out.flush();
+    }
+
+    /**
+     * Signs many files using one token session and one chosen certificate
+     *
+     * Signed files are saved next to the originals with -signed suffix and the
+     * result block with the path is printed as soon as each file is signed.
+     * Next file is prepared while the current one is signed by the token.
+     */
+    public void run(List<String> filePaths) {
+        if (filePaths.size() == 1) {
+            run(filePaths.get(0));
+            return;
+        }
+
+        Request request = context.getRequest();
+        String tspUrl = context.getOption("tspUrl");
+        this.readXmlPackaging(request, filePaths);
+        Future<LoadedDocument> firstLoading = this
+                .startLoading(Collections.singletonList(new File(filePaths.get(0))));
+
+        this.withLoading(firstLoading, () -> this.withToken(request, (token) -> {
+            DSSPrivateKeyEntry privateKey = this.getPrivateKey(request, token);
+
+            // Timestamping and saving of signed documents runs concurrently, bounded by the TSP pool
+            ExecutorService preparer = Executors.newSingleThreadExecutor();
+            ExecutorService finisher = Executors
+                    .newFixedThreadPool(PooledTimestampDataLoader.getConfiguredConcurrency());
+            try {
+                List<Future<Void>> finished = new ArrayList<>();
+                Set<String> usedPaths = new HashSet<>();
+                Future<PreparedDocument> next = preparer.submit(() -> this
+                        .prepare(this.await(firstLoading, "Reading of the file to sign failed:"), privateKey, tspUrl));
+                for (int i = 0; i < filePaths.size(); i++) {
+                    PreparedDocument prepared = this.await(next, "Preparing of the document failed:");
+                    if (i + 1 < filePaths.size()) {
+                        File nextFile = new File(filePaths.get(i + 1));
+                        next = preparer.submit(() -> this.prepare(this.load(Collections.singletonList(nextFile)),
+                                privateKey, tspUrl));
+                    }
+
+                    SignatureValue signatureValue = token.sign(prepared.dataToSign,
+                            prepared.parameters.getDigestAlgorithm(), privateKey);
+                    IntFunction<Path> paths = this.getBatchOutputPaths(prepared, usedPaths);
+                    finished.add(finisher.submit(() -> {
+                        Path path = this.saveNew(prepared, this.finish(prepared, signatureValue), paths);
+
+                        PrintStream out = context.getOut();
+                        synchronized (out) {
+                            out.println("--RESULT--");
+                            out.println(path);
+                            out.println("--RESULT--");
+                            out.flush();
+                        }
+                        return null;
+                    }));
+                }
+
+                for (Future<Void> future : finished) {
+                    this.await(future, "Signing of the document failed:");
+                }
+            } finally {
+                preparer.shutdownNow();
+                finisher.shutdownNow();
+            }
+
+            return null;
+        }));
+    }
+
+    /**
+     * Signs many files packed into one ASiC-E container by a single signature
+     */
+    public void runContainer(List<String> filePaths) {
+        Request request = context.getRequest();
+        String tspUrl = context.getOption("tspUrl");
+        List<File> files = filePaths.stream().map((path) -> new File(path)).collect(Collectors.toList());
+        Future<LoadedDocument> loading = this.startLoading(files);
+
+        String outputPath = this.withLoading(loading, () -> this.withToken(request, (token) -> {
+            DSSPrivateKeyEntry privateKey = this.getPrivateKey(request, token);
+            PreparedDocument prepared = this.prepare(this.await(loading, "Reading of the file to sign failed:"),
+                    privateKey, tspUrl);
+            SignatureValue signatureValue = token.sign(prepared.dataToSign, prepared.parameters.getDigestAlgorithm(),
+                    privateKey);
+            DSSDocument signedContainer = this.finish(prepared, signatureValue);
+
+            File firstFile = new File(filePaths.get(0)).getAbsoluteFile();
+            String name = firstFile.getName();
+            String defaultPath = new File(firstFile.getParentFile(),
+                    (name.lastIndexOf('.') > 0 ? name.substring(0, name.lastIndexOf('.')) : name) + ".sce").getPath();
+            String path = request.prompt("save", "Save signed file as", defaultPath);
+
+            if (path == null) {
+                throw new OperationException("Signed file path was not chosen.");
+            }
+
+            // Make sure file extension is correct
+            if (!(path.endsWith(".sce") || path.endsWith(".asice"))) {
+                path += ".sce";
+            }
+
+            this.save(prepared, signedContainer, path);
+            return path;
+        }));
+
+        PrintStream out = context.getOut();
+        out.println("--RESULT--");
+        out.println(outputPath);
+        out.println("--RESULT--");
+        out.flush();
+    }
+
+    /**
+     * Starts loading of the files on a background thread
+     *
+     * Loading is interrupted by cancelling the returned future, hashing of the
+     * files stops then.
+     */
+    private Future<LoadedDocument> startLoading(List<File> files) {
+        FutureTask<LoadedDocument> loading = new FutureTask<>(() -> this.load(files));
+        Thread thread = new Thread(loading, "sign-load");
+        thread.setDaemon(true);
+        thread.start();
+        return loading;
+    }
+
+    /**
+     * Runs the task using the loaded document, the loading is cancelled if the
+     * task ends without waiting for it, e.g. when the token fails
+     */
+    private <T> T withLoading(Future<LoadedDocument> loading, Supplier<T> task) {
+        try {
+            return task.get();
+        } finally {
+            loading.cancel(true);
+        }
+    }
+
+    /**
+     * Opens the configured token, runs the task with it and closes it
+     */
+    private <T> T withToken(Request request, TokenTask<T> task) {
+        String pkcsPath = context.getOption("pkcsPath");
         boolean isWindows = System.getProperty("os.name").toLowerCase().indexOf("win") >= 0;
 
         if (!isWindows && pkcsPath == null) {
-            System.err.println("PKCS #11/#12 path is not configured. Please check Settings and Help.");
-            System.exit(1);
+            throw new OperationException("PKCS #11/#12 path is not configured. Please check Settings and Help.");
         }
 
         if (pkcsPath != null && !Files.exists(Paths.get(pkcsPath))) {
-            System.err.println("PKCS #11/#12 path doesn't exist. Please check Settings and Help.");
-            System.exit(1);
+            throw new OperationException("PKCS #11/#12 path doesn't exist. Please check Settings and Help.");
         }
 
-        File fileToSign = new File(filePath);
-        DSSDocument document = new FileDocument(fileToSign);
-        String outputPath = null;
-
         boolean isPkcs12 = pkcsPath != null && (pkcsPath.endsWith(".p12") || pkcsPath.endsWith(".pfx"));
         if (isPkcs12) {
             // TODO: Can we check if file has no password so we don't ask for empty password?
@@ -70,46 +274,108 @@ public class OperationSign {
             PasswordProtection password = new PasswordProtection(callback.getPassword());
 
             try (Pkcs12SignatureToken token = new Pkcs12SignatureToken(pkcsPath, password)) {
-                outputPath = this.sign(token, document, fileToSign, tspUrl, request);
+                return task.run(token);
+            } catch (OperationException e) {
+                throw e;
             } catch (Exception e) {
-                System.err.println("Using of the PKCS #12 file failed:");
-                System.err.println(e.getMessage());
-                System.exit(1);
+                throw new OperationException("Using of the PKCS #12 file failed:", e);
             }
         } else if (pkcsPath != null) {
-            // TODO: Get a list of slots with tokens and let user choose
-            // Currently, default slot should be used if the int is negative
-            // We probably have to use with reflection (.getClass().getMethod())
-            // using method C_GetSlotList with true as parameter to get slots with tokens
-            // and C_GetSlotInfo/C_GetTokenInfo for info about these slots
-            try (Pkcs11SignatureToken token = new Pkcs11SignatureToken(pkcsPath, new PasswordCallback(request), -1)) {
-                outputPath = this.sign(token, document, fileToSign, tspUrl, request);
+            // Default slot is used if the slots can't be listed
+            Pkcs11Slots.Slot slot = this.getSlot(request, pkcsPath);
+            int slotId = slot != null ? (int) slot.id : -1;
+            String tokenId = slot != null ? slot.getTokenId() : null;
+
+            try (Pkcs11Token token = new Pkcs11Token(pkcsPath, new PasswordCallback(request), slotId, tokenId)) {
+                return task.run(token);
+            } catch (OperationException e) {
+                throw e;
             } catch (Exception e) {
-                System.err.println("Using of the PKCS #11 library failed:");
-                System.err.println(e.getMessage());
-                System.exit(1);
+                throw new OperationException("Using of the PKCS #11 library failed:", e);
             }
         } else {
             try (MSCAPISignatureToken token = new MSCAPISignatureToken()) {
-                outputPath = this.sign(token, document, fileToSign, tspUrl, request);
+                return task.run(token);
+            } catch (OperationException e) {
+                throw e;
             } catch (Exception e) {
-                System.err.println("Using of the MS CAPI failed:");
-                System.err.println(e.getMessage());
-                System.exit(1);
+                throw new OperationException("Using of the MS CAPI failed:", e);
+            }
+        }
+    }
+
+    /**
+     * Loads the files to sign, the part of the preparation independent of the key
+     *
+     * Digests of the container data objects and of the XML signed by a detached
+     * signature are computed. Files larger than
+     * {@code octosign.streaming.threshold} bytes in total (64 MB by default) are
+     * never loaded into memory for the container, they are only hashed into the
+     * manifest and copied into the container when it's saved.
+     *
+     * Nothing is loaded for PDFs and enveloped XMLs. The DSS services parse
+     * them only once the signing certificate is known, so their parsing can't
+     * overlap with opening of the token.
+     */
+    private LoadedDocument load(List<File> files) {
+        File file = files.get(0);
+        if (files.size() == 1 && file.getName().endsWith(".pdf")) {
+            return new LoadedDocument(files, Collections.singletonList(new FileDocument(file)), false, null);
+        } else if (files.size() == 1 && file.getName().endsWith(".xml")) {
+            if (xmlPackaging.equals("enveloped")) {
+                return new LoadedDocument(files, Collections.singletonList(new FileDocument(file)), false, null);
+            }
+
+            // Only the digest is signed by the detached signature, the XML is never parsed
+            DigestDocument document = new DigestDocument();
+            document.setName(file.getName());
+            try {
+                document.addDigest(DigestAlgorithm.SHA256, Base64.getEncoder()
+                        .encodeToString(StreamingContainer.digest(file.toPath(), DigestAlgorithm.SHA256)));
+            } catch (IOException e) {
+                throw new OperationException("Reading of the file to sign failed:", e);
             }
+
+            return new LoadedDocument(files, Collections.singletonList(document), false, null);
         }
 
-        System.out.println("--RESULT--");
-        System.out.println(outputPath);
-        System.out.println("--RESULT--");
-        System.exit(0);
+        long size = files.stream().mapToLong(File::length).sum();
+        if (size > Long.getLong("octosign.streaming.threshold", STREAMING_THRESHOLD)) {
+            List<Path> paths = files.stream().map(File::toPath).collect(Collectors.toList());
+            try {
+                return new LoadedDocument(files, null, true,
+                        StreamingContainer.createManifest(paths, DigestAlgorithm.SHA256));
+            } catch (IOException e) {
+                throw new OperationException("Reading of the file to sign failed:", e);
+            }
+        }
+
+        List<DSSDocument> documents = files.stream().map((dataObject) -> new FileDocument(dataObject))
+                .collect(Collectors.toList());
+
+        // Digests of the data objects are streamed from the disk and kept by the
+        // documents, compute them in parallel before they are needed for the manifest
+        documents.parallelStream().forEach((document) -> document.getDigest(DigestAlgorithm.SHA256));
+
+        return new LoadedDocument(files, documents, true, null);
     }
 
-    private <Token extends AbstractKeyStoreTokenConnection> String sign(Token token, DSSDocument document, File file,
-            String tspUrl, Request request) {
-        DSSPrivateKeyEntry privateKey = this.getPrivateKey(request, token);
+    /**
+     * Creates the service and parameters for the loaded document and computes data to sign
+     */
+    private PreparedDocument prepare(LoadedDocument loaded, DSSPrivateKeyEntry privateKey, String tspUrl) {
+        if (loaded.container) {
+            return this.prepareContainer(loaded, privateKey, tspUrl);
+        }
+
+        File file = loaded.files.get(0);
+        DSSDocument document = loaded.documents.get(0);
         boolean useTsp = tspUrl != null;
 
+        if (file.getName().endsWith(".xml") && !xmlPackaging.equals("enveloped")) {
+            return this.prepareDetachedXml(file, document, privateKey, tspUrl);
+        }
+
         // Create common certificate verifier
         // TODO: Add trust for -LT/-LTA in the future
         CommonCertificateVerifier commonCertificateVerifier = new CommonCertificateVerifier();
@@ -126,7 +392,7 @@ public class OperationSign {
             parameters.setCertificateChain(privateKey.getCertificateChain());
 
             service = new PAdESService(commonCertificateVerifier);
-        } else if (file.getName().endsWith(".xml")) {
+        } else {
             parameters = new XAdESSignatureParameters();
             // We choose the level of the signature (-B, -T, -LT, -LTA).
             parameters.setSignatureLevel(useTsp ? SignatureLevel.XAdES_BASELINE_T : SignatureLevel.XAdES_BASELINE_B);
@@ -136,75 +402,303 @@ public class OperationSign {
             parameters.setCertificateChain(privateKey.getCertificateChain());
 
             service = new XAdESService(commonCertificateVerifier);
-        } else {
-            ASiCWithCAdESSignatureParameters asicParameters = new ASiCWithCAdESSignatureParameters();
-            // We choose the level of the signature (-B, -T, -LT, -LTA).
-            asicParameters
-                    .setSignatureLevel(useTsp ? SignatureLevel.CAdES_BASELINE_T : SignatureLevel.CAdES_BASELINE_B);
-            asicParameters.aSiC().setContainerType(ASiCContainerType.ASiC_E);
-            asicParameters.setDigestAlgorithm(DigestAlgorithm.SHA256);
-            asicParameters.setSigningCertificate(privateKey.getCertificate());
-            asicParameters.setCertificateChain(privateKey.getCertificateChain());
-            parameters = asicParameters;
-
-            service = new ASiCWithCAdESService(commonCertificateVerifier);
         }
 
         if (useTsp) {
-            // Create and set the TSP source
-            OnlineTSPSource tspSource = new OnlineTSPSource(tspUrl);
-            service.setTspSource(tspSource);
+            // Set the TSP source shared by all documents
+            service.setTspSource(context.getTspSource(tspUrl));
+        }
+
+        AbstractSignatureService signatureService = service;
+        AbstractSignatureParameters signatureParameters = parameters;
+
+        if (file.getName().endsWith(".pdf")) {
+            // PDF is parsed into the heap both times, so both have to fit into the budget
+            ToBeSigned dataToSign = this.withPdfMemory(file,
+                    () -> signatureService.getDataToSign(document, signatureParameters));
+            return new PreparedDocument(file, parameters, dataToSign, (signatureValue) -> this.withPdfMemory(file,
+                    () -> signatureService.signDocument(document, signatureParameters, signatureValue)));
         }
 
         // Get the SignedInfo segment that need to be signed.
         ToBeSigned dataToSign = service.getDataToSign(document, parameters);
 
-        // This function obtains the signature value for signed information using the
-        // private key and specified algorithm
-        DigestAlgorithm digestAlgorithm = parameters.getDigestAlgorithm();
-        SignatureValue signatureValue = token.sign(dataToSign, digestAlgorithm, privateKey);
+        return new PreparedDocument(file, parameters, dataToSign,
+                (signatureValue) -> signatureService.signDocument(document, signatureParameters, signatureValue));
+    }
+
+    /**
+     * Prepares ASiC-E container with the files covered by one CAdES signature
+     */
+    private PreparedDocument prepareContainer(LoadedDocument loaded, DSSPrivateKeyEntry privateKey, String tspUrl) {
+        boolean useTsp = tspUrl != null;
+        File file = loaded.files.get(0);
+
+        if (loaded.manifest != null) {
+            DSSDocument manifest = loaded.manifest;
 
-        // We invoke the PAdESService to sign the document with the signature value
-        // obtained in the previous step.
-        DSSDocument signedDocument = service.signDocument(document, parameters, signatureValue);
+            // Manifest is what the signature of ASiC-E with CAdES signs
+            CAdESSignatureParameters parameters = new CAdESSignatureParameters();
+            parameters.setSignatureLevel(useTsp ? SignatureLevel.CAdES_BASELINE_T : SignatureLevel.CAdES_BASELINE_B);
+            parameters.setSignaturePackaging(SignaturePackaging.DETACHED);
+            parameters.setDigestAlgorithm(DigestAlgorithm.SHA256);
+            parameters.setSigningCertificate(privateKey.getCertificate());
+            parameters.setCertificateChain(privateKey.getCertificateChain());
 
-        String path = request.prompt("save", "Save signed file as", file.getAbsolutePath());
+            CAdESService service = new CAdESService(new CommonCertificateVerifier());
+            if (useTsp) {
+                service.setTspSource(context.getTspSource(tspUrl));
+            }
 
-        if (path == null) {
-            System.err.println("Signed file path was not chosen.");
-            System.exit(1);
+            ToBeSigned dataToSign = service.getDataToSign(manifest, parameters);
+            PreparedDocument prepared = new PreparedDocument(file, parameters, dataToSign,
+                    (signatureValue) -> service.signDocument(manifest, parameters, signatureValue));
+            prepared.container = true;
+            prepared.streamedFiles = loaded.files.stream().map(File::toPath).collect(Collectors.toList());
+            prepared.streamedMetadata = Collections.singletonMap(StreamingContainer.MANIFEST_NAME, manifest);
+            prepared.signatureEntry = StreamingContainer.SIGNATURE_NAME;
+            return prepared;
         }
 
-        // Make sure file extension is correct
-        if (parameters instanceof ASiCWithCAdESSignatureParameters
-                && !(path.endsWith(".sce") || path.endsWith(".asice"))) {
-            path += ".sce";
-        } else if (file.getName().endsWith(".pdf") && !path.endsWith(".pdf")) {
-            path += ".pdf";
-        } else if (file.getName().endsWith(".xml") && !path.endsWith(".xml")) {
-            path += ".xml";
+        ASiCWithCAdESSignatureParameters parameters = this.getContainerParameters(privateKey, useTsp);
+        List<DSSDocument> documents = loaded.documents;
+
+        ASiCWithCAdESService service = new ASiCWithCAdESService(new CommonCertificateVerifier());
+        if (useTsp) {
+            service.setTspSource(context.getTspSource(tspUrl));
         }
 
+        ToBeSigned dataToSign = service.getDataToSign(documents, parameters);
+        PreparedDocument prepared = new PreparedDocument(file, parameters, dataToSign,
+                (signatureValue) -> service.signDocument(documents, parameters, signatureValue));
+        prepared.container = true;
+        return prepared;
+    }
+
+    /**
+     * Prepares detached XAdES signature of the digest of the XML, in ASiC-E if chosen
+     */
+    private PreparedDocument prepareDetachedXml(File file, DSSDocument document, DSSPrivateKeyEntry privateKey,
+            String tspUrl) {
+        boolean useTsp = tspUrl != null;
+
+        XAdESSignatureParameters parameters = new XAdESSignatureParameters();
+        // We choose the level of the signature (-B, -T, -LT, -LTA).
+        parameters.setSignatureLevel(useTsp ? SignatureLevel.XAdES_BASELINE_T : SignatureLevel.XAdES_BASELINE_B);
+        parameters.setSignaturePackaging(SignaturePackaging.DETACHED);
+        parameters.setDigestAlgorithm(DigestAlgorithm.SHA256);
+        parameters.setSigningCertificate(privateKey.getCertificate());
+        parameters.setCertificateChain(privateKey.getCertificateChain());
+
+        XAdESService service = new XAdESService(new CommonCertificateVerifier());
+        if (useTsp) {
+            service.setTspSource(context.getTspSource(tspUrl));
+        }
+
+        ToBeSigned dataToSign = service.getDataToSign(document, parameters);
+        PreparedDocument prepared = new PreparedDocument(file, parameters, dataToSign,
+                (signatureValue) -> service.signDocument(document, parameters, signatureValue));
+
+        if (xmlPackaging.equals("asice")) {
+            // References of the signature are the names of the files in the container
+            List<Path> files = Collections.singletonList(file.toPath());
+            prepared.container = true;
+            prepared.streamedFiles = files;
+            prepared.streamedMetadata = Collections.singletonMap(StreamingContainer.XADES_MANIFEST_NAME,
+                    StreamingContainer.createXAdESManifest(files));
+            prepared.signatureEntry = StreamingContainer.XADES_SIGNATURE_NAME;
+        } else {
+            prepared.detached = true;
+        }
+
+        return prepared;
+    }
+
+    private void readXmlPackaging(Request request, List<String> filePaths) {
+        if (filePaths.stream().noneMatch((path) -> path.endsWith(".xml"))) {
+            return;
+        }
+
+        String packaging = context.getOption("xmlPackaging");
+        packaging = packaging != null ? packaging.trim().toLowerCase(Locale.ENGLISH) : "enveloped";
+        if (!packaging.equals("enveloped") && !packaging.equals("detached") && !packaging.equals("asice")) {
+            throw new OperationException("Unsupported packaging of the XML signature.");
+        }
+
+        this.xmlPackaging = packaging;
+    }
+
+    private <T> T withPdfMemory(File file, Supplier<T> task) {
+        try (MemoryBudget.Reservation reservation = context.getPdfMemoryBudget().reserve(file.length())) {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationException("Signing was interrupted.", e);
+        }
+    }
+
+    private ASiCWithCAdESSignatureParameters getContainerParameters(DSSPrivateKeyEntry privateKey, boolean useTsp) {
+        ASiCWithCAdESSignatureParameters parameters = new ASiCWithCAdESSignatureParameters();
+        // We choose the level of the signature (-B, -T, -LT, -LTA).
+        parameters.setSignatureLevel(useTsp ? SignatureLevel.CAdES_BASELINE_T : SignatureLevel.CAdES_BASELINE_B);
+        parameters.aSiC().setContainerType(ASiCContainerType.ASiC_E);
+        parameters.setDigestAlgorithm(DigestAlgorithm.SHA256);
+        parameters.setSigningCertificate(privateKey.getCertificate());
+        parameters.setCertificateChain(privateKey.getCertificateChain());
+
+        return parameters;
+    }
+
+    private DSSDocument finish(PreparedDocument prepared, SignatureValue signatureValue) {
+        // We invoke the service to sign the document with the signature value
+        // obtained from the token, this is also when the timestamp is requested
+        return prepared.signer.apply(signatureValue);
+    }
+
+    private void save(PreparedDocument prepared, DSSDocument signedDocument, String path) {
         try {
-            signedDocument.save(path);
+            AtomicOutput.write(Paths.get(path), this.getOutputContent(prepared, signedDocument));
         } catch (Exception e) {
-            System.err.println("There was an error saving the signed document:");
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new OperationException("There was an error saving the signed document:", e);
         }
+    }
 
-        return path;
+    /**
+     * Saves the document into the first of the paths which doesn't exist
+     *
+     * @return the saved path
+     */
+    private Path saveNew(PreparedDocument prepared, DSSDocument signedDocument, IntFunction<Path> paths) {
+        try {
+            return AtomicOutput.writeNew(paths, this.getOutputContent(prepared, signedDocument));
+        } catch (Exception e) {
+            throw new OperationException("There was an error saving the signed document:", e);
+        }
+    }
+
+    private AtomicOutput.Content getOutputContent(PreparedDocument prepared, DSSDocument signedDocument) {
+        if (prepared.streamedFiles != null) {
+            Map<String, DSSDocument> metadata = new LinkedHashMap<>(prepared.streamedMetadata);
+            metadata.put(prepared.signatureEntry, signedDocument);
+            return StreamingContainer.content(prepared.streamedFiles, metadata);
+        }
+
+        return AtomicOutput.content(signedDocument);
+    }
+
+    /**
+     * Returns paths next to the original with -signed suffix, e.g. a-signed.pdf
+     * or a-signed.docx.sce for containers
+     *
+     * Existing files and paths already used by the batch are never overwritten,
+     * a number is added instead, e.g. a-signed-2.pdf. The first path is the
+     * first one free now, the following ones are used if it's taken before the
+     * document is saved.
+     */
+    private IntFunction<Path> getBatchOutputPaths(PreparedDocument prepared, Set<String> used) {
+        String stem;
+        String suffix;
+        if (prepared.detached) {
+            stem = getSignatureStem(prepared.file);
+            suffix = ".xml";
+        } else {
+            String name = prepared.file.getName();
+            int extension = name.lastIndexOf('.');
+            stem = (extension > 0 ? name.substring(0, extension) : name) + "-signed";
+            suffix = (extension > 0 ? name.substring(extension) : "") + (prepared.container ? ".sce" : "");
+        }
+
+        File directory = prepared.file.getAbsoluteFile().getParentFile();
+        IntFunction<File> numbered = (number) -> new File(directory,
+                number == 1 ? stem + suffix : stem + "-" + number + suffix);
+        int first = 1;
+        while (numbered.apply(first).exists() || used.contains(numbered.apply(first).getPath())) {
+            first++;
+        }
+
+        used.add(numbered.apply(first).getPath());
+        int start = first;
+        return (attempt) -> numbered.apply(start + attempt).toPath();
+    }
+
+    /**
+     * Returns name of the detached signature of the file, e.g. a-signature.xml
+     */
+    private static String getSignatureName(File file) {
+        return getSignatureStem(file) + ".xml";
+    }
+
+    private static String getSignatureStem(File file) {
+        String name = file.getName();
+        return (name.endsWith(".xml") ? name.substring(0, name.length() - 4) : name) + "-signature";
+    }
+
+    private <T> T await(Future<T> future, String failure) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationException("Signing was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OperationException) {
+                throw (OperationException) e.getCause();
+            }
+
+            throw new OperationException(failure, e.getCause());
+        }
+    }
+
+    /**
+     * Lets the user choose one of the slots with a token if there are more
+     *
+     * @return the slot or null if they can't be listed
+     */
+    private Pkcs11Slots.Slot getSlot(Request request, String pkcsPath) {
+        List<Pkcs11Slots.Slot> slots = Pkcs11Slots.list(pkcsPath);
+        if (slots.isEmpty()) {
+            return null;
+        } else if (slots.size() == 1) {
+            return slots.get(0);
+        }
+
+        HashMap<String, String> slotOptions = new HashMap<String, String>();
+        for (Pkcs11Slots.Slot slot : slots) {
+            slotOptions.put(String.valueOf(slot.id), slot.getDescription());
+        }
+        String chosenSlot = request.prompt("single", "Please pick a token for signing", "", slotOptions);
+        if (chosenSlot == null) {
+            throw new OperationException("Token was not chosen.");
+        }
+
+        return slots.stream().filter((slot) -> chosenSlot.equals(String.valueOf(slot.id))).findAny()
+                .orElseThrow(() -> new OperationException("Token was not chosen."));
     }
 
     private DSSPrivateKeyEntry getPrivateKey(Request request, AbstractKeyStoreTokenConnection token) {
+        String tokenId = token instanceof Pkcs11Token ? ((Pkcs11Token) token).getTokenId() : null;
+        if (tokenId != null) {
+            DSSPrivateKeyEntry cachedKey = this.getCachedPrivateKey(request, (Pkcs11Token) token);
+            if (cachedKey != null) {
+                return cachedKey;
+            }
+        }
+
         List<DSSPrivateKeyEntry> keys;
         try {
             keys = token.getKeys();
         } catch (Exception e) {
-            System.err.println("Getting signing certificates failed. Please check Settings and Help. Error:");
-            System.err.println(e.getMessage());
-            System.exit(1);
-            return null;
+            throw new OperationException("Getting signing certificates failed. Please check Settings and Help. Error:",
+                    e);
+        }
+
+        if (tokenId != null) {
+            Map<String, String> labels = new LinkedHashMap<>();
+            for (DSSPrivateKeyEntry key : keys) {
+                if (key instanceof KSPrivateKeyEntry) {
+                    labels.put(((KSPrivateKeyEntry) key).getAlias(), this.getLabel(key));
+                }
+            }
+            context.getKeyCache().put(tokenId, labels);
         }
 
         // Automatically choose for the user if only one is available
@@ -213,51 +707,159 @@ public class OperationSign {
         }
 
         HashMap<String, String> keyOptions = new HashMap<String, String>();
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
         for (DSSPrivateKeyEntry key : keys) {
-            String dn = key.getCertificate().getSubjectX500Principal().getName("RFC2253");
-            String label = "";
-            try {
-                LdapName ldapDN = new LdapName(dn);
-                String dnName = "";
-                String dnCountry = "";
-                String dnCity = "";
-                String dnStreet = "";
-                String notBefore = dateFormat.format(key.getCertificate().getNotBefore());
-                String notAfter = dateFormat.format(key.getCertificate().getNotAfter());
-                for (Rdn rdn : ldapDN.getRdns()) {
-                    if (rdn.getType().equalsIgnoreCase("CN"))
-                        dnName = rdn.getValue().toString();
-                    if (rdn.getType().equalsIgnoreCase("C"))
-                        dnCountry = rdn.getValue().toString();
-                    if (rdn.getType().equalsIgnoreCase("L"))
-                        dnCity = rdn.getValue().toString();
-                    if (rdn.getType().equalsIgnoreCase("STREET"))
-                        dnStreet = rdn.getValue().toString();
-                }
-
-                label = String.format("%s, %s %s, %s (%s - %s)", dnName, dnCity, dnStreet, dnCountry, notBefore,
-                        notAfter);
-            } catch (Exception e) {
-                label = "Certificate SN: " + key.getCertificate().getCertificate().getSerialNumber().toString(16);
-            }
-
-            keyOptions.put(key.getCertificate().getDSSId().asXmlId(), label);
+            keyOptions.put(key.getCertificate().getDSSId().asXmlId(), this.getLabel(key));
         }
         String chosenKey = request.prompt("single", "Please pick a certificate for signing", "", keyOptions);
         if (chosenKey == null) {
-            System.err.println("Certificate was not chosen.");
-            System.exit(1);
+            throw new OperationException("Certificate was not chosen.");
         }
 
         DSSPrivateKeyEntry privateKey = keys.stream()
                 .filter(key -> chosenKey.equals(key.getCertificate().getDSSId().asXmlId())).findAny().orElse(null);
 
         if (privateKey == null) {
-            System.err.println("Certificate was not chosen.");
-            System.exit(1);
+            throw new OperationException("Certificate was not chosen.");
         }
 
         return privateKey;
     }
+
+    /**
+     * Offers the cached keys of the token and reads only the chosen one
+     *
+     * @return the key or null if the token keys are not cached or changed
+     */
+    private DSSPrivateKeyEntry getCachedPrivateKey(Request request, Pkcs11Token token) {
+        KeyCache keyCache = context.getKeyCache();
+        Map<String, String> labels = keyCache.get(token.getTokenId());
+        if (labels == null || labels.isEmpty()) {
+            return null;
+        }
+
+        String alias;
+        if (labels.size() == 1) {
+            alias = labels.keySet().iterator().next();
+        } else {
+            alias = request.prompt("single", "Please pick a certificate for signing", "", labels);
+            if (alias == null) {
+                throw new OperationException("Certificate was not chosen.");
+            }
+        }
+
+        DSSPrivateKeyEntry privateKey;
+        try {
+            privateKey = token.getKey(alias);
+        } catch (Exception e) {
+            throw new OperationException("Getting signing certificates failed. Please check Settings and Help. Error:",
+                    e);
+        }
+
+        if (privateKey == null) {
+            // Keys on the token changed since they were cached
+            keyCache.remove(token.getTokenId());
+        }
+
+        return privateKey;
+    }
+
+    private String getLabel(DSSPrivateKeyEntry key) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        String dn = key.getCertificate().getSubjectX500Principal().getName("RFC2253");
+        try {
+            LdapName ldapDN = new LdapName(dn);
+            String dnName = "";
+            String dnCountry = "";
+            String dnCity = "";
+            String dnStreet = "";
+            String notBefore = dateFormat.format(key.getCertificate().getNotBefore());
+            String notAfter = dateFormat.format(key.getCertificate().getNotAfter());
+            for (Rdn rdn : ldapDN.getRdns()) {
+                if (rdn.getType().equalsIgnoreCase("CN"))
+                    dnName = rdn.getValue().toString();
+                if (rdn.getType().equalsIgnoreCase("C"))
+                    dnCountry = rdn.getValue().toString();
+                if (rdn.getType().equalsIgnoreCase("L"))
+                    dnCity = rdn.getValue().toString();
+                if (rdn.getType().equalsIgnoreCase("STREET"))
+                    dnStreet = rdn.getValue().toString();
+            }
+
+            return String.format("%s, %s %s, %s (%s - %s)", dnName, dnCity, dnStreet, dnCountry, notBefore,
+                    notAfter);
+        } catch (Exception e) {
+            return "Certificate SN: " + key.getCertificate().getCertificate().getSerialNumber().toString(16);
+        }
+    }
+
+    private interface TokenTask<T> {
+        T run(AbstractKeyStoreTokenConnection token);
+    }
+
+    /**
+     * Files to sign with everything that doesn't depend on the signing certificate
+     */
+    private static class LoadedDocument {
+        private final List<File> files;
+
+        private final List<DSSDocument> documents;
+
+        private final boolean container;
+
+        /**
+         * Manifest of the container if the files are streamed into it
+         */
+        private final DSSDocument manifest;
+
+        private LoadedDocument(List<File> files, List<DSSDocument> documents, boolean container,
+                DSSDocument manifest) {
+            this.files = files;
+            this.documents = documents;
+            this.container = container;
+            this.manifest = manifest;
+        }
+    }
+
+    /**
+     * Document with everything needed to sign it once the signature value is known
+     */
+    private static class PreparedDocument {
+        private final File file;
+
+        private final AbstractSignatureParameters parameters;
+
+        private final ToBeSigned dataToSign;
+
+        private final Function<SignatureValue, DSSDocument> signer;
+
+        private boolean container = false;
+
+        /**
+         * Whether the signed document is only the signature, saved separately
+         */
+        private boolean detached = false;
+
+        /**
+         * Files copied into the container on save if they are not in the signed document
+         */
+        private List<Path> streamedFiles;
+
+        /**
+         * Manifest entries of the container with streamed files
+         */
+        private Map<String, DSSDocument> streamedMetadata;
+
+        /**
+         * Name of the signed document in the container with streamed files
+         */
+        private String signatureEntry;
+
+        private PreparedDocument(File file, AbstractSignatureParameters parameters, ToBeSigned dataToSign,
+                Function<SignatureValue, DSSDocument> signer) {
+            this.file = file;
+            this.parameters = parameters;
+            this.dataToSign = dataToSign;
+            this.signer = signer;
+        }
+    }
 }
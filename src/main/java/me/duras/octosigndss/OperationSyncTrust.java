@@ -0,0 +1,56 @@
+package me.duras.octosigndss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+
+import me.duras.octosigndss.trust.TrustMirror;
+
+/**
+ * Synchronizes the local mirror of the EU Trusted Certificate Lists
+ *
+ * Meant to run periodically on a machine with access to the lists, so that
+ * verification using the mirror never waits for the network.
+ */
+public class OperationSyncTrust {
+    private Context context;
+
+    public OperationSyncTrust(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * @param directoryPath mirror directory or null to use the configured one
+     */
+    public void run(String directoryPath) {
+        File directory = directoryPath != null ? new File(directoryPath) : TrustMirror.getDirectory();
+        if (directory == null) {
+            throw new OperationException("Directory of the trust mirror is required.");
+        }
+
+        TrustMirror.Result result;
+        try {
+            result = new TrustMirror(directory).sync();
+        } catch (IOException e) {
+            throw new OperationException("Synchronization of the trusted lists failed:", e);
+        }
+
+        PrintStream err = context.getErr();
+        for (Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+            err.println(failure.getKey() + ": " + failure.getValue());
+        }
+
+        PrintStream out = context.getOut();
+        out.println("--RESULT--");
+        out.println(directory.getAbsolutePath());
+        out.println(result.getSynchronizedUrls().size() + " synchronized, " + result.getFailures().size()
+                + " failed");
+        out.println("--RESULT--");
+        out.flush();
+
+        if (!result.getFailures().isEmpty()) {
+            throw new OperationException("Synchronization of some trusted lists failed.");
+        }
+    }
+}
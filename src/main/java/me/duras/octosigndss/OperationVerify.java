@@ -1,94 +1,165 @@
 package me.duras.octosigndss;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
-import eu.europa.esig.dss.enumerations.Indication;
 import eu.europa.esig.dss.model.DSSDocument;
 import eu.europa.esig.dss.model.FileDocument;
 import eu.europa.esig.dss.model.x509.CertificateToken;
-import eu.europa.esig.dss.service.crl.OnlineCRLSource;
-import eu.europa.esig.dss.service.http.commons.CommonsDataLoader;
-import eu.europa.esig.dss.service.ocsp.OnlineOCSPSource;
 import eu.europa.esig.dss.simplereport.SimpleReport;
-import eu.europa.esig.dss.spi.client.http.IgnoreDataLoader;
-import eu.europa.esig.dss.spi.tsl.TrustedListsCertificateSource;
 import eu.europa.esig.dss.validation.AdvancedSignature;
-import eu.europa.esig.dss.validation.CertificateVerifier;
-import eu.europa.esig.dss.validation.CommonCertificateVerifier;
 import eu.europa.esig.dss.validation.SignedDocumentValidator;
 import eu.europa.esig.dss.validation.executor.ValidationLevel;
 import eu.europa.esig.dss.validation.reports.Reports;
-import me.duras.octosigndss.trust.IgnoreCrlSource;
-import me.duras.octosigndss.trust.IgnoreOcspSource;
-import me.duras.octosigndss.trust.LazyTLValidationJob;
+import me.duras.octosigndss.trust.CountryExtractor;
+import me.duras.octosigndss.trust.DeferredTrustCertificateVerifier;
 import me.duras.octosigndss.trust.TrustLoader;
 
 public class OperationVerify {
+    private Context context;
+
+    private String format;
+
+    public OperationVerify(Context context) {
+        this(context, "markdown");
+    }
+
+    /**
+     * @param context context of the backend
+     * @param format  format of the results, markdown result blocks or jsonl
+     */
+    public OperationVerify(Context context, String format) {
+        if (!format.equals("markdown") && !format.equals("jsonl")) {
+            throw new OperationException("Unsupported format of the results.");
+        }
+
+        this.context = context;
+        this.format = format;
+    }
+
+    /**
+     * Verifies one file or, in the batch mode, many files in parallel
+     *
+     * Batch mode is used for more than one path or a directory. Every supported
+     * file in the directories is verified and the result block of each file is
+     * printed as soon as it's verified, with the path of the file on the line
+     * following the status. Fails once all files are processed if verifying of
+     * any of them failed.
+     */
+    public void run(List<String> paths) {
+        if (paths.size() == 1 && !Files.isDirectory(Paths.get(paths.get(0)))) {
+            run(paths.get(0));
+            return;
+        }
+
+        List<String> filePaths;
+        try {
+            filePaths = expandDirectories(paths);
+        } catch (IOException e) {
+            throw new OperationException("Listing of the files to verify failed:", e);
+        }
+
+        ReportWriter writer = createWriter(true);
+
+        // Documents share trusted lists, revocation and AIA sources of the context
+        int threads = Math.min(Math.max(1, filePaths.size()), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Result>> tasks = new ArrayList<>();
+            for (String filePath : filePaths) {
+                tasks.add(() -> {
+                    Result result = verify(filePath);
+                    write(writer, filePath, result);
+                    return result;
+                });
+            }
+
+            boolean failed = false;
+            List<Future<Result>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    failed |= results.get(i).get().failed;
+                } catch (ExecutionException e) {
+                    failed = true;
+                    synchronized (context.getErr()) {
+                        context.getErr().println("Verifying failed:");
+                        context.getErr().println(filePaths.get(i) + ": " + e.getCause().getMessage());
+                    }
+                }
+            }
+
+            if (failed) {
+                throw new OperationException("Verifying of some files failed.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationException("Operation was interrupted.", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     public void run(String filePath) {
-        if (!(filePath.endsWith(".pdf") || filePath.endsWith(".xml") || filePath.endsWith(".asice") || filePath.endsWith(".sce"))) {
-            System.out.println("--RESULT--");
-            System.out.println("UNKNOWN");
-            System.out.println("--RESULT--");
-            System.exit(0);
+        write(createWriter(false), filePath, verify(filePath));
+    }
+
+    private Result verify(String filePath) {
+        if (!isSupported(filePath)) {
+            return new Result("UNKNOWN", null);
+        }
+
+        if (!filePath.endsWith(".pdf")) {
+            return validate(filePath);
+        }
+
+        // Whole PDF is parsed into the heap, wait until it fits into the budget
+        try (MemoryBudget.Reservation reservation = context.getPdfMemoryBudget()
+                .reserve(new File(filePath).length())) {
+            return validate(filePath);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.failure();
         }
+    }
 
+    private Result validate(String filePath) {
         try {
             DSSDocument document = new FileDocument(filePath);
+            SignedDocumentValidator documentValidator = SignedDocumentValidator.fromDocument(document);
+
+            // Signatures are extracted once, trust is provided to the same validator later
+            DeferredTrustCertificateVerifier cv = new DeferredTrustCertificateVerifier(
+                    context.getCertificateVerifier());
+            documentValidator.setCertificateVerifier(cv);
 
-            // TODO: Find out how we can do this without using two document validators
-            // See https://github.com/durasj/octosign-dss/issues/8
-            Set<String> countries = getDocumentCertificateCountries(document);
+            Set<String> countries = getDocumentCertificateCountries(documentValidator.getSignatures());
     
             if (countries.size() == 0) {
-                System.out.println("--RESULT--");
-                System.out.println("UNSIGNED");
-                System.out.println("--RESULT--");
-                System.exit(0);
+                return new Result("UNSIGNED", null);
             }
     
-            SignedDocumentValidator documentValidator = SignedDocumentValidator.fromDocument(document);
-    
-            CertificateVerifier cv = new CommonCertificateVerifier();
-            // Capability to download resources from AIA
-            cv.setDataLoader(new CommonsDataLoader());
-            // Capability to request OCSP Responders
-            cv.setOcspSource(new OnlineOCSPSource());
-            // Capability to download CRL
-            cv.setCrlSource(new OnlineCRLSource());
-            // Use EU Trusted Certificate Lists
-            cv.setTrustedCertSource(getTrustedCertificateSource(countries));
-            documentValidator.setCertificateVerifier(cv);
+            // Make sure EU Trusted Certificate Lists of all required countries are loaded
+            TrustLoader trustLoader = context.getTrustLoader();
+            trustLoader.load(countries);
+            cv.trust(trustLoader.getTrustedCertificateSource());
     
             documentValidator.setValidationLevel(ValidationLevel.TIMESTAMPS);
     
             Reports reports = documentValidator.validateDocument();
-    
             SimpleReport report = reports.getSimpleReport();
-            String details = "";
-            for (String id : report.getSignatureIdList()) {
-                details += "### t{Signed by} " + report.getSignedBy(id) + "\n\n";
-                details += "**t{Validity}**: t{" + getHumanReadableIndication(report.getIndication(id)) + "}\n\n";
-                details += "**t{Date and time}**: " + report.getSigningTime(id) + "\n\n";
-                details += "**t{Qualification}**: t{" + report.getSignatureQualification(id).getLabel() + "}\n\n";
-                details += "**t{Chain of trust}**: " + report.getCertificateChain(id).getCertificate().stream()
-                        .map((cert) -> cert.getQualifiedName()).collect(Collectors.joining(" > ")) + "\n\n";
-    
-                List<String> errors = report.getErrors(id);
-                if (errors.size() > 0) {
-                    details += "**t{Potential problems}**: \n\n";
-                    int errorNumber = 1;
-                    for (String err : errors) {
-                        details += errorNumber + ". " + err + "\n\n";
-                        errorNumber++;
-                    }
-                }
-    
-                details += "\n\n";
-            }
     
             String status = "UNKNOWN";
             if (report.getSignaturesCount() == 0) {
@@ -99,69 +170,94 @@ public class OperationVerify {
                 status = "INVALID";
             }
     
-            System.out.println("--RESULT--");
-            System.out.println(status);
-            System.out.println(details);
-            System.out.println("--RESULT--");
-            System.exit(0);
+            return new Result(status, report);
         } catch (Exception e) {
-            System.err.println("Verifying failed:");
-            System.err.println(e.getMessage());
+            context.getErr().println("Verifying failed:");
+            context.getErr().println(e.getMessage());
 
-            System.out.println("--RESULT--");
-            System.out.println("UNKNOWN");
-            System.out.println("--RESULT--");
-            System.exit(0);
+            return Result.failure();
         }
     }
 
-    private TrustedListsCertificateSource getTrustedCertificateSource(Set<String> requiredCountries) {
-        TrustLoader loader = new TrustLoader();
-        loader.load(requiredCountries);
-        return loader.getTrustedCertificateSource();
+    private ReportWriter createWriter(boolean batch) {
+        if (format.equals("jsonl")) {
+            return new JsonLinesReportWriter(context.getOut());
+        }
+
+        return new MarkdownReportWriter(context.getOut(), batch);
     }
 
-    private Set<String> getDocumentCertificateCountries(DSSDocument document) {
-        SignedDocumentValidator documentValidator = SignedDocumentValidator.fromDocument(document);
-        CertificateVerifier cv = new CommonCertificateVerifier();
-        cv.setDataLoader(new IgnoreDataLoader());
-        cv.setCrlSource(new IgnoreCrlSource());
-        cv.setOcspSource(new IgnoreOcspSource());
+    private void write(ReportWriter writer, String filePath, Result result) {
+        // Whole result at once so that results of parallel verifications don't mix
+        synchronized (context.getOut()) {
+            writer.start(filePath, result.status, result.report != null);
+            if (result.report != null) {
+                for (String id : result.report.getSignatureIdList()) {
+                    writer.signature(result.report, id);
+                }
+            }
+            writer.end();
+        }
+    }
+
+    private boolean isSupported(String filePath) {
+        return filePath.endsWith(".pdf") || filePath.endsWith(".xml") || filePath.endsWith(".asice")
+                || filePath.endsWith(".sce");
+    }
 
-        // Dummy certificate source just so that we can proceed
-        cv.setTrustedCertSource(new TrustedListsCertificateSource());
-        documentValidator.setCertificateVerifier(cv);
+    private List<String> expandDirectories(List<String> paths) throws IOException {
+        List<String> filePaths = new ArrayList<>();
+        for (String path : paths) {
+            if (!Files.isDirectory(Paths.get(path))) {
+                filePaths.add(path);
+                continue;
+            }
 
+            try (Stream<Path> files = Files.walk(Paths.get(path))) {
+                files.filter(Files::isRegularFile).map(Path::toString).filter(this::isSupported).sorted()
+                        .forEach(filePaths::add);
+            }
+        }
+
+        return filePaths;
+    }
+
+    private Set<String> getDocumentCertificateCountries(List<AdvancedSignature> signatures) {
         Set<String> certificateCountries = new HashSet<String>();
-        List<AdvancedSignature> signatures = documentValidator.getSignatures();
         for (AdvancedSignature signature : signatures) {
             List<CertificateToken> certificates = signature.getCertificateListWithinSignatureAndTimestamps();
             for (CertificateToken cert : certificates) {
-                Matcher matcher = LazyTLValidationJob.canonicalizedCountryPattern
-                        .matcher(cert.getCanonicalizedSubject());
-                if (matcher.find())
-                    certificateCountries.add(matcher.group(1));
+                String country = CountryExtractor.getCountry(cert);
+                if (country != null)
+                    certificateCountries.add(country);
             }
         }
 
         return certificateCountries;
     }
 
-    private String getHumanReadableIndication(Indication indication) {
-        switch (indication) {
-            case TOTAL_PASSED:
-            case PASSED:
-                return "Valid";
+    private static class Result {
+        private final String status;
+
+        private final SimpleReport report;
 
-            case TOTAL_FAILED:
-            case FAILED:
-                return "Invalid";
+        private final boolean failed;
 
-            case INDETERMINATE:
-                return "Indeterminate";
+        private Result(String status, SimpleReport report) {
+            this(status, report, false);
+        }
+
+        private Result(String status, SimpleReport report, boolean failed) {
+            this.status = status;
+            this.report = report;
+            this.failed = failed;
+        }
 
-            default:
-                return "Unknown";
+        /**
+         * Result of a document whose verifying failed
+         */
+        private static Result failure() {
+            return new Result("UNKNOWN", null, true);
         }
     }
 }
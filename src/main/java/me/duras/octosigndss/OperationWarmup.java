@@ -0,0 +1,154 @@
+package me.duras.octosigndss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import me.duras.octosigndss.trust.TrustLoader;
+
+/**
+ * Exercises the signing and verification paths on throwaway documents
+ *
+ * Used when building the distribution to record the classes loaded by the
+ * usual operations into the class data sharing archive used on start. Key,
+ * certificate and documents are generated into a temporary directory, and
+ * nothing leaves the machine: signatures have no timestamp, the certificate
+ * has no revocation sources and the trusted lists are read only from the
+ * local cache.
+ */
+public class OperationWarmup {
+    static final String PASSWORD = "warmup";
+
+    private Context context;
+
+    public OperationWarmup(Context context) {
+        this.context = context;
+    }
+
+    public void run() {
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("octosign-warmup");
+            // Country of the certificate makes the verification load the trusted lists
+            File keyStore = SelfSignedKeys.createKeyStore(directory.resolve("warmup.p12").toFile(),
+                    "CN=Octosign Warm-up, C=SK", PASSWORD.toCharArray());
+            File pdf = this.createPdf(directory.resolve("warmup.pdf").toFile());
+            File xml = directory.resolve("warmup.xml").toFile();
+            Files.write(xml.toPath(), "<document><text>Warm-up</text></document>".getBytes(StandardCharsets.UTF_8));
+
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            WarmupRequest request = new WarmupRequest(keyStore.getPath(), directory.toFile());
+            // Options of the warm-up are never seen by the operations of the host
+            Context warmupContext = new Context(request, discard, discard, new TrustLoader(true));
+            OperationSign sign = new OperationSign(warmupContext);
+
+            sign.run(pdf.getPath());
+            sign.run(xml.getPath());
+            request.xmlPackaging = "asice";
+            warmupContext.getOptionCache().invalidate();
+            (new OperationSign(warmupContext)).run(xml.getPath());
+            sign.runContainer(Arrays.asList(pdf.getPath(), xml.getPath()));
+
+            (new OperationVerify(warmupContext)).run(
+                    request.saved.stream().map(File::getPath).collect(Collectors.toList()));
+        } catch (IOException | GeneralSecurityException e) {
+            throw new OperationException("Warm-up failed:", e);
+        } finally {
+            this.delete(directory);
+        }
+
+        PrintStream out = context.getOut();
+        out.println("--RESULT--");
+        out.println("OK");
+        out.println("--RESULT--");
+        out.flush();
+    }
+
+    private File createPdf(File file) throws IOException {
+        try (PDDocument pdf = new PDDocument()) {
+            pdf.addPage(new PDPage());
+            pdf.save(file);
+        }
+
+        return file;
+    }
+
+    private void delete(Path directory) {
+        if (directory == null) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            // Temporary directory is left behind
+        }
+    }
+
+    /**
+     * Answers the questions of the operations as the host would
+     */
+    private static class WarmupRequest extends Request {
+        private final String pkcsPath;
+
+        private final File directory;
+
+        private final List<File> saved = new ArrayList<>();
+
+        private String xmlPackaging = "enveloped";
+
+        private WarmupRequest(String pkcsPath, File directory) {
+            super(null, null);
+            this.pkcsPath = pkcsPath;
+            this.directory = directory;
+        }
+
+        @Override
+        public String prompt(String promptType, String question, String defaultValue) {
+            if (promptType.equals("password")) {
+                return PASSWORD;
+            } else if (promptType.equals("save")) {
+                // Signed files are saved next to the originals, never replacing them
+                File file = new File(directory, "signed-" + saved.size() + "-" + new File(defaultValue).getName());
+                saved.add(file);
+                return file.getPath();
+            }
+
+            return defaultValue;
+        }
+
+        @Override
+        public String prompt(String promptType, String question, String defaultValue, Map<String, String> options) {
+            return options.isEmpty() ? defaultValue : options.keySet().iterator().next();
+        }
+
+        @Override
+        public String option(String id) {
+            return options(Arrays.asList(id)).get(id);
+        }
+
+        @Override
+        public Map<String, String> options(List<String> ids) {
+            Map<String, String> values = new HashMap<>();
+            values.put("pkcsPath", pkcsPath);
+            values.put("xmlPackaging", xmlPackaging);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package me.duras.octosigndss;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Values of the backend options kept for the lifetime of the process
+ *
+ * If the host supports it, all options declared by {@link OperationMeta} are
+ * asked at once on the first use of any of them, otherwise each option is
+ * asked on its first use. The first operation missing an option asks the host
+ * and the concurrent ones wait for its answer, other options stay available
+ * meanwhile. Values are kept until the host signals a change of the settings,
+ * failed questions are asked again by the next use.
+ */
+class OptionCache {
+    private final List<String> names;
+
+    private final Map<String, CompletableFuture<String>> values = new ConcurrentHashMap<>();
+
+    /**
+     * @param names names of all the options
+     */
+    OptionCache(List<String> names) {
+        this.names = names;
+    }
+
+    /**
+     * Returns value of the option, asking the host if not known yet
+     *
+     * @param request channel to the host used if the values are not known
+     * @param name    name of the option
+     * @return value of the option or null if not set
+     */
+    String get(Request request, String name) {
+        if (!names.contains(name)) {
+            return request.option(name);
+        }
+
+        CompletableFuture<String> value = values.get(name);
+        while (value == null) {
+            Map<String, CompletableFuture<String>> claimed = claim(
+                    request.supportsOptions() ? names : Collections.singletonList(name));
+            ask(request, claimed);
+            // Option claimed meanwhile by another operation is answered by it
+            value = claimed.containsKey(name) ? claimed.get(name) : values.get(name);
+        }
+
+        try {
+            return value.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationException("Operation was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Forgets the values, they are asked again on the next use
+     */
+    void invalidate() {
+        values.clear();
+    }
+
+    /**
+     * Marks the options not known yet as being asked by the caller
+     */
+    private Map<String, CompletableFuture<String>> claim(List<String> options) {
+        Map<String, CompletableFuture<String>> claimed = new LinkedHashMap<>();
+        for (String option : options) {
+            CompletableFuture<String> value = new CompletableFuture<>();
+            if (values.putIfAbsent(option, value) == null) {
+                claimed.put(option, value);
+            }
+        }
+
+        return claimed;
+    }
+
+    /**
+     * Asks the host for the claimed options, failed ones are forgotten
+     */
+    private void ask(Request request, Map<String, CompletableFuture<String>> claimed) {
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> answers;
+        try {
+            if (request.supportsOptions()) {
+                answers = request.options(new ArrayList<>(claimed.keySet()));
+            } else {
+                answers = new HashMap<>();
+                for (String option : claimed.keySet()) {
+                    answers.put(option, request.option(option));
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            claimed.forEach((option, value) -> {
+                values.remove(option, value);
+                value.completeExceptionally(e);
+            });
+            throw e;
+        }
+
+        // Options missing in the answer are not set
+        claimed.forEach((option, value) -> value.complete(answers.get(option)));
+    }
+}
@@ -0,0 +1,81 @@
+package me.duras.octosigndss;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Slots with a present token of a PKCS #11 library
+ *
+ * The JDK doesn't expose slot enumeration, so C_GetSlotList and C_GetTokenInfo
+ * of its PKCS #11 wrapper are called through reflection. The wrapper instance
+ * is shared with the SunPKCS11 provider opened for the chosen slot later.
+ */
+final class Pkcs11Slots {
+    private Pkcs11Slots() {
+    }
+
+    /**
+     * Lists slots with tokens, empty if they can't be enumerated
+     *
+     * @param libraryPath path of the PKCS #11 library
+     */
+    static List<Slot> list(String libraryPath) {
+        try {
+            Class<?> pkcs11Class = Class.forName("sun.security.pkcs11.wrapper.PKCS11");
+            Class<?> initArgsClass = Class.forName("sun.security.pkcs11.wrapper.CK_C_INITIALIZE_ARGS");
+            Method getInstance = pkcs11Class.getMethod("getInstance", String.class, String.class, initArgsClass,
+                    boolean.class);
+            Object pkcs11 = getInstance.invoke(null, libraryPath, "C_GetFunctionList", null, false);
+
+            long[] slotIds = (long[]) pkcs11Class.getMethod("C_GetSlotList", boolean.class).invoke(pkcs11, true);
+            Method getTokenInfo = pkcs11Class.getMethod("C_GetTokenInfo", long.class);
+
+            List<Slot> slots = new ArrayList<>();
+            for (long slotId : slotIds) {
+                Object tokenInfo = getTokenInfo.invoke(pkcs11, slotId);
+                slots.add(new Slot(slotId, field(tokenInfo, "label"), field(tokenInfo, "model"),
+                        field(tokenInfo, "serialNumber")));
+            }
+
+            return slots;
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            // Not accessible on this JDK or the library failed, the default slot is used
+            return Collections.emptyList();
+        }
+    }
+
+    private static String field(Object tokenInfo, String name) throws ReflectiveOperationException {
+        char[] value = (char[]) tokenInfo.getClass().getField(name).get(tokenInfo);
+        return value != null ? new String(value).trim() : "";
+    }
+
+    static class Slot {
+        final long id;
+
+        final String label;
+
+        final String model;
+
+        final String serialNumber;
+
+        Slot(long id, String label, String model, String serialNumber) {
+            this.id = id;
+            this.label = label;
+            this.model = model;
+            this.serialNumber = serialNumber;
+        }
+
+        /**
+         * Identifier of the token in the slot, stable across sessions
+         */
+        String getTokenId() {
+            return serialNumber + "/" + label;
+        }
+
+        String getDescription() {
+            return String.format("%s (%s, %s)", label, model, serialNumber);
+        }
+    }
+}
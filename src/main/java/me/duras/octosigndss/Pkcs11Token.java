@@ -0,0 +1,60 @@
+package me.duras.octosigndss;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableEntryException;
+
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
+import eu.europa.esig.dss.token.PasswordInputCallback;
+import eu.europa.esig.dss.token.Pkcs11SignatureToken;
+
+/**
+ * PKCS #11 token in a known slot able to read a single key by its alias
+ */
+class Pkcs11Token extends Pkcs11SignatureToken {
+    private final String tokenId;
+
+    /**
+     * @param pkcsPath path of the PKCS #11 library
+     * @param callback callback providing the PIN
+     * @param slotId   id of the slot or negative for the default one
+     * @param tokenId  identifier of the token in the slot or null if unknown
+     */
+    Pkcs11Token(String pkcsPath, PasswordInputCallback callback, int slotId, String tokenId) {
+        super(pkcsPath, callback, slotId);
+        this.tokenId = tokenId;
+    }
+
+    String getTokenId() {
+        return tokenId;
+    }
+
+    /**
+     * Reads the entry of the key with the given alias only
+     *
+     * Loading of the key store still lists the labels of all objects on the
+     * token, but the certificate chains of the other keys are not read.
+     *
+     * @return the key or null if there is no such key on the token
+     */
+    DSSPrivateKeyEntry getKey(String alias) {
+        try {
+            KeyStore keyStore = getKeyStore();
+            if (!keyStore.isKeyEntry(alias)) {
+                return null;
+            }
+
+            KeyStore.Entry entry = keyStore.getEntry(alias, getKeyProtectionParameter());
+            if (!(entry instanceof KeyStore.PrivateKeyEntry)) {
+                return null;
+            }
+
+            return new KSPrivateKeyEntry(alias, (KeyStore.PrivateKeyEntry) entry);
+        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableEntryException e) {
+            throw new DSSException("Unable to read the key " + alias, e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package me.duras.octosigndss;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.service.http.commons.TimestampDataLoader;
+
+/**
+ * Timestamp data loader keeping connections to the TSP alive between requests
+ *
+ * At most the given number of requests is in flight at once, the others wait
+ * for a free connection. Failed requests, including 5xx and 429 responses, are
+ * retried with exponential backoff.
+ */
+public class PooledTimestampDataLoader extends TimestampDataLoader {
+    private static final long serialVersionUID = 2760542046165853716L;
+
+    private static final String CONCURRENCY_PROPERTY = "octosign.tsp.concurrency";
+
+    private static final String ATTEMPTS_PROPERTY = "octosign.tsp.attempts";
+
+    private static final ContentType TIMESTAMP_QUERY = ContentType.create("application/timestamp-query");
+
+    private final int maxInFlight;
+
+    private final int maxAttempts;
+
+    private final long backoffMillis;
+
+    private final Semaphore inFlight;
+
+    private transient CloseableHttpClient client;
+
+    /**
+     * Creates the loader configured by the system properties
+     * {@code octosign.tsp.concurrency} and {@code octosign.tsp.attempts}
+     */
+    public PooledTimestampDataLoader() {
+        this(getConfiguredConcurrency(), Integer.getInteger(ATTEMPTS_PROPERTY, 3), 500);
+    }
+
+    /**
+     * Returns maximum number of concurrent requests set by
+     * {@code octosign.tsp.concurrency}
+     */
+    public static int getConfiguredConcurrency() {
+        return Math.max(1, Integer.getInteger(CONCURRENCY_PROPERTY, 4));
+    }
+
+    /**
+     * @param maxInFlight   maximum number of concurrent requests
+     * @param maxAttempts   maximum number of attempts of one request
+     * @param backoffMillis delay before the first retry, doubled on every next one
+     */
+    public PooledTimestampDataLoader(int maxInFlight, int maxAttempts, long backoffMillis) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = backoffMillis;
+        this.inFlight = new Semaphore(this.maxInFlight, true);
+    }
+
+    @Override
+    public byte[] post(String url, byte[] content) throws DSSException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DSSException("Interrupted while waiting for the TSP", e);
+        }
+
+        try {
+            Exception lastError = null;
+            for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+                if (attempt > 1) {
+                    backoff(attempt);
+                }
+
+                try {
+                    return execute(url, content);
+                } catch (RetryableException | IOException e) {
+                    lastError = e;
+                }
+            }
+
+            throw new DSSException("Unable to get timestamp from " + url + " after " + maxAttempts + " attempts",
+                    lastError);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private byte[] execute(String url, byte[] content) throws IOException, RetryableException {
+        HttpPost post = new HttpPost(url);
+        post.setEntity(new ByteArrayEntity(content, TIMESTAMP_QUERY));
+
+        try (CloseableHttpResponse response = getClient().execute(post)) {
+            int status = response.getStatusLine().getStatusCode();
+            // Body is always consumed so the connection can be reused
+            byte[] body = response.getEntity() != null ? EntityUtils.toByteArray(response.getEntity()) : new byte[0];
+
+            if (status >= 500 || status == 429) {
+                throw new RetryableException("TSP responded with status " + status);
+            } else if (status != 200) {
+                throw new DSSException("TSP responded with status " + status);
+            }
+
+            return body;
+        }
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(backoffMillis << (attempt - 2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DSSException("Interrupted while waiting for the TSP", e);
+        }
+    }
+
+    private synchronized CloseableHttpClient getClient() {
+        if (client == null) {
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(maxInFlight);
+            connectionManager.setDefaultMaxPerRoute(maxInFlight);
+
+            RequestConfig config = RequestConfig.custom().setConnectTimeout(getTimeoutConnection())
+                    .setSocketTimeout(getTimeoutSocket()).build();
+
+            client = HttpClients.custom().setConnectionManager(connectionManager).setDefaultRequestConfig(config)
+                    .build();
+        }
+
+        return client;
+    }
+
+    private static class RetryableException extends Exception {
+        private static final long serialVersionUID = -1748469235407133574L;
+
+        private RetryableException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package me.duras.octosigndss;
+
+import eu.europa.esig.dss.simplereport.SimpleReport;
+
+/**
+ * Writes verification results of documents as they are verified
+ *
+ * Every document is written as a start, its signatures one by one and an end,
+ * so a signature is written as soon as it's rendered.
+ */
+interface ReportWriter {
+    /**
+     * Starts the result of a document
+     *
+     * @param filePath  path of the verified file
+     * @param status    overall status of the document
+     * @param validated whether the document was validated, even with no signatures
+     */
+    void start(String filePath, String status, boolean validated);
+
+    /**
+     * Writes one signature of the document
+     *
+     * @param report report of the document
+     * @param id     id of the signature in the report
+     */
+    void signature(SimpleReport report, String id);
+
+    /**
+     * Ends the result of the document started last
+     */
+    void end();
+}
@@ -1,5 +1,9 @@
 package me.duras.octosigndss;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.stream.Collectors;
@@ -7,14 +11,21 @@ import java.util.stream.Collectors;
 public class Request {
     Scanner scanner;
 
+    PrintStream out;
+
     public Request(Scanner scanner) {
+        this(scanner, System.out);
+    }
+
+    public Request(Scanner scanner, PrintStream out) {
         this.scanner = scanner;
+        this.out = out;
     }
 
     public String prompt(String promptType, String question, String defaultValue) {
-        System.out.println("--PROMPT--");
-        System.out.format("%s\"%s\"(\"%s\")\n", promptType, question, defaultValue);
-        System.out.println("--PROMPT--");
+        this.out.println("--PROMPT--");
+        this.out.format("%s\"%s\"(\"%s\")\n", promptType, question, defaultValue);
+        this.out.println("--PROMPT--");
 
         return this.handleAnswer("PROMPT");
     }
@@ -24,21 +35,76 @@ public class Request {
             .map((entry) -> String.format("%s\"%s\"", entry.getKey(), entry.getValue()))
             .collect(Collectors.joining(" "));
 
-        System.out.println("--PROMPT--");
-        System.out.format("%s\"%s\"(\"%s\")[%s]\n", promptType, question, defaultValue, preparedOptions);
-        System.out.println("--PROMPT--");
+        this.out.println("--PROMPT--");
+        this.out.format("%s\"%s\"(\"%s\")[%s]\n", promptType, question, defaultValue, preparedOptions);
+        this.out.println("--PROMPT--");
 
         return this.handleAnswer("PROMPT");
     }
 
     public String option(String id) {
-        System.out.println("--GETOPTION--");
-        System.out.println(id);
-        System.out.println("--GETOPTION--");
+        this.out.println("--GETOPTION--");
+        this.out.println(id);
+        this.out.println("--GETOPTION--");
 
         return this.handleAnswer("GETOPTION");
     }
 
+    /**
+     * Whether the host answers many options in one round trip
+     *
+     * The lines protocol has no such exchange, so the options are asked one by
+     * one as hosts have always expected.
+     */
+    public boolean supportsOptions() {
+        return false;
+    }
+
+    /**
+     * Asks for values of many options, one by one unless {@link #supportsOptions()}
+     *
+     * @param ids names of the options
+     * @return values by the option name, null if not set
+     */
+    public Map<String, String> options(List<String> ids) {
+        Map<String, String> values = new HashMap<>();
+        for (String id : ids) {
+            values.put(id, this.option(id));
+        }
+
+        return values;
+    }
+
+    /**
+     * Waits for the next operation requested by the host
+     *
+     * @return operation name followed by its arguments or null if the input ended
+     */
+    public String[] operation() {
+        List<String> lines = null;
+        while (scanner.hasNextLine()) {
+            String line = scanner.nextLine().trim();
+
+            if (line.equals("--OPERATION--")) {
+                if (lines != null) {
+                    return lines.toArray(new String[0]);
+                }
+
+                lines = new ArrayList<String>();
+            } else if (lines != null && !line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+
+        return null;
+    }
+
+    public void exit(int code) {
+        this.out.println("--EXIT--");
+        this.out.println(code);
+        this.out.println("--EXIT--");
+    }
+
     private String handleAnswer(String delimiter) {
         String answer = null;
         boolean isAnswer = false;
@@ -0,0 +1,94 @@
+package me.duras.octosigndss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Throwaway keys with self-signed certificates
+ *
+ * Used by the warm-up, the tests and the benchmarks, certificates are valid
+ * for one day.
+ */
+public final class SelfSignedKeys {
+    private SelfSignedKeys() {
+    }
+
+    /**
+     * @param algorithm RSA or EC
+     * @param size      size of the key in bits
+     */
+    public static KeyPair generateKeyPair(String algorithm, int size) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        generator.initialize(size);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Creates certificate of the key signed by the key itself
+     *
+     * @param keyPair    the key
+     * @param subject    DN of the subject and the issuer
+     * @param serial     serial number of the certificate
+     * @param extensions extensions of the certificate
+     */
+    public static X509Certificate createCertificate(KeyPair keyPair, String subject, long serial,
+            Extension... extensions) throws GeneralSecurityException {
+        X500Name name = new X500Name(subject);
+        Date now = new Date();
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(serial),
+                new Date(now.getTime() - 60 * 1000), new Date(now.getTime() + 24L * 60 * 60 * 1000), name,
+                keyPair.getPublic());
+        String signatureAlgorithm = keyPair.getPrivate().getAlgorithm().equals("EC") ? "SHA256withECDSA"
+                : "SHA256withRSA";
+
+        try {
+            for (Extension extension : extensions) {
+                builder.addExtension(extension);
+            }
+
+            return new JcaX509CertificateConverter().getCertificate(
+                    builder.build(new JcaContentSignerBuilder(signatureAlgorithm).build(keyPair.getPrivate())));
+        } catch (IOException | OperatorCreationException e) {
+            throw new GeneralSecurityException(e);
+        }
+    }
+
+    /**
+     * Creates PKCS #12 file with a throwaway RSA key and its certificate
+     *
+     * @param file     the created file
+     * @param subject  DN of the certificate subject
+     * @param password password of the file and the key
+     */
+    public static File createKeyStore(File file, String subject, char[] password)
+            throws IOException, GeneralSecurityException {
+        KeyPair keyPair = generateKeyPair("RSA", 2048);
+        X509Certificate certificate = createCertificate(keyPair, subject, 1);
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("key", keyPair.getPrivate(), password, new Certificate[] { certificate });
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            keyStore.store(out, password);
+        }
+
+        return file;
+    }
+}
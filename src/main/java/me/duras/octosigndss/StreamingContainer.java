@@ -0,0 +1,222 @@
+package me.duras.octosigndss;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.InMemoryDocument;
+import eu.europa.esig.dss.model.MimeType;
+
+/**
+ * ASiC-E container built without loading the data objects
+ *
+ * The data objects are hashed in chunks, for CAdES into the ASiCManifest which
+ * is what the detached CAdES signature signs, for XAdES into the references
+ * of the detached signature itself. The container is then written by copying
+ * the files into the zip, so heap use doesn't depend on their size.
+ */
+final class StreamingContainer {
+    static final String MANIFEST_NAME = "META-INF/ASiCManifest.xml";
+
+    static final String SIGNATURE_NAME = "META-INF/signature001.p7s";
+
+    static final String XADES_MANIFEST_NAME = "META-INF/manifest.xml";
+
+    static final String XADES_SIGNATURE_NAME = "META-INF/signatures001.xml";
+
+    private static final String MIME_TYPE = "application/vnd.etsi.asic-e+zip";
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private StreamingContainer() {
+    }
+
+    /**
+     * Creates the ASiCManifest referencing the files by their names
+     *
+     * @param files           data objects of the container
+     * @param digestAlgorithm algorithm of the data object digests
+     */
+    static DSSDocument createManifest(List<Path> files, DigestAlgorithm digestAlgorithm) throws IOException {
+        Set<String> names = new HashSet<>();
+        for (Path file : files) {
+            if (!names.add(file.getFileName().toString())) {
+                throw new OperationException("Files in the container must have unique names.");
+            }
+        }
+
+        // Files are hashed in parallel, each of them in chunks, until the caller is interrupted
+        Thread caller = Thread.currentThread();
+        String[] digests = new String[files.size()];
+        try {
+            IntStream.range(0, files.size()).parallel().forEach((i) -> {
+                try {
+                    digests[i] = Base64.getEncoder().encodeToString(digest(files.get(i), digestAlgorithm, caller));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        StringBuilder manifest = new StringBuilder();
+        manifest.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+        manifest.append("<asic:ASiCManifest xmlns:asic=\"http://uri.etsi.org/02918/v1.2.1#\"");
+        manifest.append(" xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\">");
+        manifest.append("<asic:SigReference MimeType=\"application/x-pkcs7-signature\" URI=\"")
+                .append(SIGNATURE_NAME).append("\"/>");
+        for (int i = 0; i < files.size(); i++) {
+            String name = files.get(i).getFileName().toString();
+            manifest.append("<asic:DataObjectReference MimeType=\"")
+                    .append(escape(MimeType.fromFileName(name).getMimeTypeString())).append("\" URI=\"")
+                    .append(escape(name)).append("\">");
+            manifest.append("<ds:DigestMethod Algorithm=\"").append(digestAlgorithm.getUri()).append("\"/>");
+            manifest.append("<ds:DigestValue>").append(digests[i]).append("</ds:DigestValue>");
+            manifest.append("</asic:DataObjectReference>");
+        }
+        manifest.append("</asic:ASiCManifest>");
+
+        return new InMemoryDocument(manifest.toString().getBytes(StandardCharsets.UTF_8), MANIFEST_NAME,
+                MimeType.XML);
+    }
+
+    /**
+     * Creates the OpenDocument manifest of the container with XAdES signature
+     *
+     * @param files data objects of the container
+     */
+    static DSSDocument createXAdESManifest(List<Path> files) {
+        StringBuilder manifest = new StringBuilder();
+        manifest.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+        manifest.append("<manifest:manifest xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\"");
+        manifest.append(" manifest:version=\"1.2\">");
+        manifest.append("<manifest:file-entry manifest:full-path=\"/\" manifest:media-type=\"").append(MIME_TYPE)
+                .append("\"/>");
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            manifest.append("<manifest:file-entry manifest:full-path=\"").append(escape(name))
+                    .append("\" manifest:media-type=\"")
+                    .append(escape(MimeType.fromFileName(name).getMimeTypeString())).append("\"/>");
+        }
+        manifest.append("</manifest:manifest>");
+
+        return new InMemoryDocument(manifest.toString().getBytes(StandardCharsets.UTF_8), XADES_MANIFEST_NAME,
+                MimeType.XML);
+    }
+
+    /**
+     * Writes the container, the files are copied into it as they are read
+     *
+     * @param output   path of the container
+     * @param files    data objects of the container
+     * @param metadata manifest and signature entries by their names in the container
+     */
+    static void write(Path output, List<Path> files, Map<String, DSSDocument> metadata) throws IOException {
+        AtomicOutput.write(output, content(files, metadata));
+    }
+
+    /**
+     * Content of the container, the files are copied into it as they are read
+     *
+     * @param files    data objects of the container
+     * @param metadata manifest and signature entries by their names in the container
+     */
+    static AtomicOutput.Content content(List<Path> files, Map<String, DSSDocument> metadata) {
+        return AtomicOutput.streamContent((out) -> {
+            // Closing the zip would close the file before it's moved
+            ZipOutputStream zip = new ZipOutputStream(out);
+
+            // Mime type has to be the first and uncompressed entry
+            byte[] mimeType = MIME_TYPE.getBytes(StandardCharsets.US_ASCII);
+            CRC32 crc = new CRC32();
+            crc.update(mimeType);
+            ZipEntry mimeTypeEntry = new ZipEntry("mimetype");
+            mimeTypeEntry.setMethod(ZipEntry.STORED);
+            mimeTypeEntry.setSize(mimeType.length);
+            mimeTypeEntry.setCrc(crc.getValue());
+            zip.putNextEntry(mimeTypeEntry);
+            zip.write(mimeType);
+            zip.closeEntry();
+
+            for (Path file : files) {
+                zip.putNextEntry(new ZipEntry(file.getFileName().toString()));
+                Files.copy(file, zip);
+                zip.closeEntry();
+            }
+
+            for (Map.Entry<String, DSSDocument> entry : metadata.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                copy(entry.getValue(), zip);
+                zip.closeEntry();
+            }
+
+            zip.finish();
+        });
+    }
+
+    /**
+     * Computes digest of the file read in chunks through its channel
+     */
+    static byte[] digest(Path file, DigestAlgorithm digestAlgorithm) throws IOException {
+        return digest(file, digestAlgorithm, Thread.currentThread());
+    }
+
+    /**
+     * Computes digest of the file, stops once the owner thread is interrupted
+     */
+    private static byte[] digest(Path file, DigestAlgorithm digestAlgorithm, Thread owner) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(digestAlgorithm.getJavaName());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                if (owner.isInterrupted()) {
+                    throw new InterruptedIOException("Hashing of the file was interrupted.");
+                }
+
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        return digest.digest();
+    }
+
+    private static void copy(DSSDocument document, OutputStream out) throws IOException {
+        try (InputStream in = document.openStream()) {
+            in.transferTo(out);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,94 @@
+package me.duras.octosigndss.trust;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Cache directory readable and writable only by the current user
+ *
+ * Used for the caches whose content must not be read or planted by other
+ * users, unlike the shared {@code java.io.tmpdir}. Location can be set by the
+ * system property {@code octosign.cache.dir}, otherwise the usual per-user
+ * cache location of the platform is used.
+ */
+public final class CacheDirectory {
+    private static final String DIRECTORY_PROPERTY = "octosign.cache.dir";
+
+    private CacheDirectory() {
+    }
+
+    /**
+     * Returns the directory, creating it with owner-only permissions if needed
+     */
+    public static File get() {
+        File directory = new File(locate());
+        directory.mkdirs();
+        restrict(directory.toPath(), true);
+        return directory;
+    }
+
+    /**
+     * Makes the file or directory accessible only by its owner
+     *
+     * @param path      the file or directory
+     * @param directory whether the path is a directory
+     */
+    public static void restrict(Path path, boolean directory) {
+        try {
+            Set<PosixFilePermission> permissions = EnumSet.of(PosixFilePermission.OWNER_READ,
+                    PosixFilePermission.OWNER_WRITE);
+            if (directory) {
+                permissions.add(PosixFilePermission.OWNER_EXECUTE);
+            }
+            Files.setPosixFilePermissions(path, permissions);
+        } catch (UnsupportedOperationException | IOException e) {
+            // Not a POSIX file system, the user profile directories are private already
+            File file = path.toFile();
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+    }
+
+    /**
+     * Creates an empty file with owner-only permissions
+     *
+     * @param path the file to create
+     */
+    public static void createPrivateFile(Path path) throws IOException {
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ,
+                    PosixFilePermission.OWNER_WRITE)));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(path);
+            restrict(path, false);
+        }
+    }
+
+    private static String locate() {
+        String configured = System.getProperty(DIRECTORY_PROPERTY);
+        if (configured != null && !configured.trim().isEmpty()) {
+            return configured.trim();
+        }
+
+        String home = System.getProperty("user.home");
+        String osName = System.getProperty("os.name", "generic").toLowerCase(Locale.ENGLISH);
+        if (osName.indexOf("win") >= 0 && System.getenv("LOCALAPPDATA") != null) {
+            return System.getenv("LOCALAPPDATA") + File.separator + "Octosign" + File.separator + "cache";
+        } else if ((osName.indexOf("mac") >= 0) || (osName.indexOf("darwin") >= 0)) {
+            return home + "/Library/Caches/Octosign";
+        } else if (System.getenv("XDG_CACHE_HOME") != null) {
+            return System.getenv("XDG_CACHE_HOME") + "/octosign";
+        }
+
+        return home + "/.cache/octosign";
+    }
+}
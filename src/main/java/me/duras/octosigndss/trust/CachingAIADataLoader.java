@@ -0,0 +1,53 @@
+package me.duras.octosigndss.trust;
+
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.service.http.commons.CommonsDataLoader;
+
+/**
+ * Data loader reusing certificates downloaded over AIA for chain building
+ *
+ * Certificates are cached by URL for a day. Failed downloads are remembered
+ * for a few minutes, so an unreachable CA is not asked again for every
+ * document.
+ */
+public class CachingAIADataLoader extends CommonsDataLoader {
+    private static final long serialVersionUID = -1964712305825871530L;
+
+    private static final long MAX_AGE = 24 * 60 * 60 * 1000;
+
+    private static final long FAILURE_MAX_AGE = 5 * 60 * 1000;
+
+    private final transient ResponseCache cache;
+
+    public CachingAIADataLoader(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public byte[] get(String url) {
+        String key = "aia:" + url;
+        byte[] certificates = cache.get(key);
+        if (certificates != null) {
+            if (certificates.length == 0) {
+                throw new DSSException(String.format("Download of '%s' failed recently", url));
+            }
+
+            return certificates;
+        }
+
+        try {
+            certificates = super.get(url);
+        } catch (DSSException e) {
+            cache.put(key, new byte[0], System.currentTimeMillis() + FAILURE_MAX_AGE);
+            throw e;
+        }
+
+        if (certificates == null || certificates.length == 0) {
+            cache.put(key, new byte[0], System.currentTimeMillis() + FAILURE_MAX_AGE);
+        } else {
+            cache.put(key, certificates, System.currentTimeMillis() + MAX_AGE);
+        }
+
+        return certificates;
+    }
+}
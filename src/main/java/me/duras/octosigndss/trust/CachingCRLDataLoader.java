@@ -0,0 +1,83 @@
+package me.duras.octosigndss.trust;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.ASN1UTCTime;
+import org.bouncycastle.asn1.x509.Time;
+
+import eu.europa.esig.dss.service.http.commons.CommonsDataLoader;
+
+/**
+ * CRL data loader reusing downloaded CRLs until their next update
+ *
+ * CRLs are cached by their distribution point URL. Only the beginning of the
+ * CRL is parsed to find its next update, revoked certificates are left to the
+ * CRL source.
+ */
+public class CachingCRLDataLoader extends CommonsDataLoader {
+    private static final long serialVersionUID = 2391856418937446215L;
+
+    private final transient ResponseCache cache;
+
+    public CachingCRLDataLoader(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public byte[] get(String url) {
+        String key = "crl:" + url;
+        byte[] crl = cache.get(key);
+        if (crl != null) {
+            return crl;
+        }
+
+        crl = super.get(url);
+        if (crl != null && crl.length > 0) {
+            Date nextUpdate = readNextUpdate(crl);
+            if (nextUpdate != null) {
+                cache.put(key, crl, nextUpdate.getTime());
+            }
+        }
+
+        return crl;
+    }
+
+    /**
+     * Reads the next update of the CRL without parsing its revoked certificates
+     *
+     * @return next update or null if the CRL doesn't have it or can't be read
+     */
+    static Date readNextUpdate(byte[] crl) {
+        try {
+            ASN1StreamParser parser = new ASN1StreamParser(crl);
+            ASN1SequenceParser certificateList = (ASN1SequenceParser) parser.readObject();
+            ASN1SequenceParser tbsCertList = (ASN1SequenceParser) certificateList.readObject();
+
+            ASN1Encodable field = tbsCertList.readObject();
+            if (field instanceof ASN1Integer) {
+                // Optional version
+                field = tbsCertList.readObject();
+            }
+
+            // Signature algorithm, issuer and this update have to be fully read to get past them
+            field.toASN1Primitive();
+            tbsCertList.readObject().toASN1Primitive();
+            tbsCertList.readObject().toASN1Primitive();
+
+            field = tbsCertList.readObject();
+            if (field instanceof ASN1UTCTime || field instanceof ASN1GeneralizedTime) {
+                return Time.getInstance(field).getDate();
+            }
+
+            return null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
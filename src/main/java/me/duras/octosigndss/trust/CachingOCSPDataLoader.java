@@ -0,0 +1,111 @@
+package me.duras.octosigndss.trust;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.util.encoders.Hex;
+
+import eu.europa.esig.dss.service.http.commons.OCSPDataLoader;
+
+/**
+ * OCSP data loader reusing responses until their next update
+ *
+ * Responses are cached by the responder URL and the issuer and serial number
+ * of the requested certificate. Requests with a nonce are never answered from
+ * the cache. Responses without next update are reused only shortly.
+ */
+public class CachingOCSPDataLoader extends OCSPDataLoader {
+    private static final long serialVersionUID = -5528718207353390628L;
+
+    private static final long MAX_AGE_WITHOUT_NEXT_UPDATE = 15 * 60 * 1000;
+
+    private final transient ResponseCache cache;
+
+    public CachingOCSPDataLoader(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public byte[] post(String url, byte[] content) {
+        String key = getKey(url, content);
+        if (key == null) {
+            return super.post(url, content);
+        }
+
+        byte[] response = cache.get(key);
+        if (response != null) {
+            return response;
+        }
+
+        response = super.post(url, content);
+        Date expiration = getExpiration(response);
+        if (expiration != null) {
+            cache.put(key, response, expiration.getTime());
+        }
+
+        return response;
+    }
+
+    /**
+     * Returns key of the request by issuer and serial number
+     *
+     * @return key or null if the request can't be cached
+     */
+    private String getKey(String url, byte[] content) {
+        try {
+            OCSPReq request = new OCSPReq(content);
+            Req[] certificates = request.getRequestList();
+            if (certificates.length != 1 || request.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce) != null) {
+                return null;
+            }
+
+            CertificateID id = certificates[0].getCertID();
+            return "ocsp:" + url + ":" + id.getHashAlgOID().getId() + ":" + Hex.toHexString(id.getIssuerNameHash())
+                    + ":" + Hex.toHexString(id.getIssuerKeyHash()) + ":" + id.getSerialNumber().toString(16);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns time until which the successful response can be reused
+     *
+     * @return expiration or null if the response shouldn't be cached
+     */
+    private Date getExpiration(byte[] response) {
+        if (response == null || response.length == 0) {
+            return null;
+        }
+
+        try {
+            OCSPResp ocspResponse = new OCSPResp(response);
+            if (ocspResponse.getStatus() != OCSPResp.SUCCESSFUL) {
+                return null;
+            }
+
+            BasicOCSPResp basicResponse = (BasicOCSPResp) ocspResponse.getResponseObject();
+            Date expiration = null;
+            for (SingleResp singleResponse : basicResponse.getResponses()) {
+                Date nextUpdate = singleResponse.getNextUpdate();
+                if (nextUpdate == null) {
+                    nextUpdate = new Date(singleResponse.getThisUpdate().getTime() + MAX_AGE_WITHOUT_NEXT_UPDATE);
+                }
+                if (expiration == null || nextUpdate.before(expiration)) {
+                    expiration = nextUpdate;
+                }
+            }
+
+            return expiration;
+        } catch (IOException | OCSPException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package me.duras.octosigndss.trust;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.Properties;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.DSSException;
+import eu.europa.esig.dss.model.FileDocument;
+import eu.europa.esig.dss.spi.client.http.DSSFileLoader;
+import eu.europa.esig.dss.utils.Utils;
+import me.duras.octosigndss.trust.ProxiedCommonsDataLoader.ConditionalResponse;
+
+/**
+ * File cache of LOTL / TL documents refreshed independently per list
+ *
+ * Cached list is used without any request while it was checked within the
+ * expiration time and its NextUpdate didn't pass. Otherwise, it's checked by a
+ * conditional GET using its ETag and Last-Modified. Downloaded list replaces
+ * the cached one only if its content digest changed and its sequence number is
+ * not lower, so the validation job can skip analysis of unchanged lists.
+ *
+ * Requests go through the {@link ProxiedCommonsDataLoader}, files are named by
+ * the digest of their URL and replaced through unique temporary files, so
+ * concurrent refreshes never publish partially written lists.
+ */
+public class ConditionalFileCacheDataLoader implements DSSFileLoader {
+    private static final long serialVersionUID = -3468301427758146307L;
+
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String NEXT_UPDATE = "nextUpdate";
+    private static final String SEQUENCE_NUMBER = "sequenceNumber";
+    private static final String DIGEST = "digest";
+
+    private File fileCacheDirectory;
+
+    private long cacheExpirationTime = Long.MAX_VALUE;
+
+    private boolean offline = false;
+
+    private ProxiedCommonsDataLoader dataLoader = new ProxiedCommonsDataLoader();
+
+    public void setFileCacheDirectory(File fileCacheDirectory) {
+        this.fileCacheDirectory = fileCacheDirectory;
+        new File(fileCacheDirectory, "meta").mkdirs();
+    }
+
+    /**
+     * Sets how long a checked list is used without checking it again
+     *
+     * @param cacheExpirationTime time in milliseconds
+     */
+    public void setCacheExpirationTime(long cacheExpirationTime) {
+        this.cacheExpirationTime = cacheExpirationTime;
+    }
+
+    /**
+     * Sets the offline mode in which only the cached lists are used
+     *
+     * @param offline TRUE to never download the lists
+     */
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    /**
+     * Sets the loader downloading the lists
+     *
+     * @param dataLoader {@link ProxiedCommonsDataLoader}
+     */
+    public void setDataLoader(ProxiedCommonsDataLoader dataLoader) {
+        this.dataLoader = dataLoader;
+    }
+
+    @Override
+    public DSSDocument getDocument(String url) throws DSSException {
+        File file = getCacheFile(url);
+        Properties meta = readMeta(url);
+        boolean cached = file.isFile() && meta.getProperty(DIGEST) != null;
+
+        if (cached && (offline || isFresh(file, meta))) {
+            return new FileDocument(file);
+        }
+
+        if (offline) {
+            throw new DSSException(String.format("Document '%s' is not available in the cache", url));
+        }
+
+        try {
+            download(url, file, cached ? meta : new Properties());
+        } catch (IOException | DSSException e) {
+            if (cached) {
+                // Outdated list is still better than none, its validity is checked later
+                return new FileDocument(file);
+            }
+
+            throw new DSSException(String.format("Unable to download '%s'", url), e);
+        }
+
+        return new FileDocument(file);
+    }
+
+    @Override
+    public boolean remove(String url) {
+        File file = getCacheFile(url);
+        getMetaFile(url).delete();
+        return file.delete();
+    }
+
+    /**
+     * Returns the digest of the currently cached content
+     *
+     * @param url the list URL
+     * @return base64 encoded SHA-256 digest or null if not cached
+     */
+    public String getDigest(String url) {
+        return readMeta(url).getProperty(DIGEST);
+    }
+
+    private boolean isFresh(File file, Properties meta) {
+        long now = System.currentTimeMillis();
+        if (file.lastModified() + cacheExpirationTime < now) {
+            return false;
+        }
+
+        String nextUpdate = meta.getProperty(NEXT_UPDATE);
+        return nextUpdate == null || Long.parseLong(nextUpdate) > now;
+    }
+
+    private void download(String url, File file, Properties meta) throws IOException {
+        ConditionalResponse response = dataLoader.conditionalGet(url, meta.getProperty(ETAG),
+                meta.getProperty(LAST_MODIFIED));
+        if (response == null) {
+            if (!file.isFile()) {
+                throw new IOException("Not modified response without any cached content");
+            }
+
+            file.setLastModified(System.currentTimeMillis());
+            return;
+        }
+
+        byte[] content = response.content;
+        Properties newMeta = new Properties();
+        setIfPresent(newMeta, ETAG, response.etag);
+        setIfPresent(newMeta, LAST_MODIFIED, response.lastModified);
+        newMeta.setProperty(DIGEST, digest(content));
+        readSchemeInformation(content, newMeta);
+
+        boolean unchanged = newMeta.getProperty(DIGEST).equals(meta.getProperty(DIGEST));
+        boolean older = isLowerSequenceNumber(newMeta, meta);
+        if (file.isFile() && (unchanged || older)) {
+            // Keep the cached content, the check itself makes it fresh again
+            if (older) {
+                newMeta = meta;
+            }
+            writeMeta(url, newMeta);
+            file.setLastModified(System.currentTimeMillis());
+            return;
+        }
+
+        File temporaryFile = File.createTempFile(file.getName(), ".tmp", fileCacheDirectory);
+        try {
+            try (OutputStream out = new FileOutputStream(temporaryFile)) {
+                out.write(content);
+            }
+            move(temporaryFile, file);
+        } finally {
+            temporaryFile.delete();
+        }
+        writeMeta(url, newMeta);
+    }
+
+    private boolean isLowerSequenceNumber(Properties newMeta, Properties meta) {
+        String newSequence = newMeta.getProperty(SEQUENCE_NUMBER);
+        String sequence = meta.getProperty(SEQUENCE_NUMBER);
+        if (newSequence == null || sequence == null) {
+            return false;
+        }
+
+        try {
+            return Long.parseLong(newSequence) < Long.parseLong(sequence);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads sequence number and next update from the scheme information
+     *
+     * Scheme information is at the beginning of the list, so reading stops right
+     * after it without parsing the rest of the document.
+     */
+    private void readSchemeInformation(byte[] content, Properties meta) {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(new ByteArrayInputStream(content));
+            boolean inNextUpdate = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("TSLSequenceNumber")) {
+                        meta.setProperty(SEQUENCE_NUMBER, reader.getElementText().trim());
+                    } else if (name.equals("NextUpdate")) {
+                        inNextUpdate = true;
+                    } else if (inNextUpdate && name.equals("dateTime")) {
+                        long nextUpdate = OffsetDateTime.parse(reader.getElementText().trim()).toInstant()
+                                .toEpochMilli();
+                        meta.setProperty(NEXT_UPDATE, Long.toString(nextUpdate));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("NextUpdate")) {
+                        inNextUpdate = false;
+                    } else if (name.equals("SchemeInformation")) {
+                        break;
+                    }
+                }
+            }
+        } catch (XMLStreamException | RuntimeException e) {
+            // Without these, the list is just checked after each expiration
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing to release
+                }
+            }
+        }
+    }
+
+    private File getCacheFile(String url) {
+        return new File(fileCacheDirectory, getNormalizedFileName(url));
+    }
+
+    private File getMetaFile(String url) {
+        return new File(new File(fileCacheDirectory, "meta"), getNormalizedFileName(url) + ".properties");
+    }
+
+    /**
+     * Returns the file name of the URL, distinct URLs never share one
+     */
+    private String getNormalizedFileName(String url) {
+        try {
+            return Utils.toHex(MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new DSSException(e);
+        }
+    }
+
+    private Properties readMeta(String url) {
+        Properties meta = new Properties();
+        File metaFile = getMetaFile(url);
+        if (metaFile.isFile()) {
+            try (InputStream in = new FileInputStream(metaFile)) {
+                meta.load(in);
+            } catch (IOException e) {
+                // Missing metadata only means the list is downloaded again
+                return new Properties();
+            }
+        }
+
+        return meta;
+    }
+
+    private void writeMeta(String url, Properties meta) throws IOException {
+        File metaFile = getMetaFile(url);
+        File temporaryFile = File.createTempFile(metaFile.getName(), ".tmp", metaFile.getParentFile());
+        try {
+            try (OutputStream out = new FileOutputStream(temporaryFile)) {
+                meta.store(out, url);
+            }
+            move(temporaryFile, metaFile);
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    private void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void setIfPresent(Properties meta, String key, String value) {
+        if (value != null) {
+            meta.setProperty(key, value);
+        }
+    }
+
+    private String digest(byte[] content) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new DSSException(e);
+        }
+    }
+}
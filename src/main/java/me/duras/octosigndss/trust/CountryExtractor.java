@@ -0,0 +1,63 @@
+package me.duras.octosigndss.trust;
+
+import java.util.Locale;
+
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+
+/**
+ * Extracts country codes in the form used to require trusted lists
+ *
+ * Country of a certificate is read from the country attribute of its subject
+ * DN. Codes are upper-cased and the territories used by the trusted lists
+ * instead of ISO 3166 codes (EL, UK) are mapped to them.
+ */
+public final class CountryExtractor {
+    private CountryExtractor() {
+    }
+
+    /**
+     * Returns the country of the certificate subject
+     *
+     * @param certificate the certificate
+     * @return normalized country code or null if the subject has none
+     */
+    public static String getCountry(CertificateToken certificate) {
+        try {
+            X500Name subject = X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded());
+            RDN[] countries = subject.getRDNs(BCStyle.C);
+            if (countries.length == 0 || countries[0].getFirst() == null) {
+                return null;
+            }
+
+            return normalize(IETFUtils.valueToString(countries[0].getFirst().getValue()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Normalizes the country code or trusted list scheme territory
+     *
+     * @param country country code as found in the certificate or trusted list
+     * @return upper-cased ISO 3166 code or null if empty
+     */
+    public static String normalize(String country) {
+        if (country == null || country.trim().isEmpty()) {
+            return null;
+        }
+
+        String code = country.trim().toUpperCase(Locale.ENGLISH);
+        if (code.equals("EL")) {
+            return "GR";
+        } else if (code.equals("UK")) {
+            return "GB";
+        }
+
+        return code;
+    }
+}
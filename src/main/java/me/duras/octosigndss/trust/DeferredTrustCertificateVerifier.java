@@ -0,0 +1,52 @@
+package me.duras.octosigndss.trust;
+
+import eu.europa.esig.dss.spi.tsl.TrustedListsCertificateSource;
+import eu.europa.esig.dss.spi.x509.CertificatePool;
+import eu.europa.esig.dss.validation.CertificateVerifier;
+import eu.europa.esig.dss.validation.CommonCertificateVerifier;
+
+/**
+ * Certificate verifier whose trusted certificates can be provided after the
+ * signatures were extracted
+ *
+ * Document validator creates its certificate pool from the verifier as soon as
+ * the verifier is set, so the trusted certificates are imported into that same
+ * pool once they are known. This way the document is parsed only once, both to
+ * find out which trusted lists are needed and to validate it.
+ */
+public class DeferredTrustCertificateVerifier extends CommonCertificateVerifier {
+    private CertificatePool validationPool;
+
+    /**
+     * Creates verifier using the online sources of the given verifier
+     *
+     * @param sources verifier with data loader, OCSP and CRL sources to use
+     */
+    public DeferredTrustCertificateVerifier(CertificateVerifier sources) {
+        super();
+        setDataLoader(sources.getDataLoader());
+        setOcspSource(sources.getOcspSource());
+        setCrlSource(sources.getCrlSource());
+
+        // Empty certificate source just so that we can proceed before the trust is known
+        setTrustedCertSource(new TrustedListsCertificateSource());
+    }
+
+    @Override
+    public CertificatePool createValidationPool() {
+        validationPool = super.createValidationPool();
+        return validationPool;
+    }
+
+    /**
+     * Provides trusted certificates to the already created validation pool
+     *
+     * @param trustedCertificateSource loaded trusted lists
+     */
+    public void trust(TrustedListsCertificateSource trustedCertificateSource) {
+        setTrustedCertSource(trustedCertificateSource);
+        if (validationPool != null) {
+            validationPool.importCerts(trustedCertificateSource);
+        }
+    }
+}
@@ -1,21 +1,23 @@
 package me.duras.octosigndss.trust;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import eu.europa.esig.dss.model.DSSException;
-import eu.europa.esig.dss.model.x509.CertificateToken;
 import eu.europa.esig.dss.spi.client.http.DSSFileLoader;
 import eu.europa.esig.dss.spi.tsl.TLValidationJobSummary;
 import eu.europa.esig.dss.spi.tsl.TrustedListsCertificateSource;
@@ -45,10 +47,15 @@ import eu.europa.esig.dss.utils.Utils;
  *
  */
 public class LazyTLValidationJob {
-    public final static Pattern canonicalizedCountryPattern = Pattern.compile(".*,?c=(\\w+),?.*",
-            Pattern.CASE_INSENSITIVE);
+    /**
+     * Creates the executor for the analysis tasks of each refresh
+     */
+    private Supplier<ExecutorService> executorFactory = TLExecutors.fromSystemProperties();
 
-    private ExecutorService executorService = Executors.newCachedThreadPool();
+    /**
+     * Executor of the currently running refresh
+     */
+    private ExecutorService executorService;
 
     /**
      * Contains all caches for the current validation job
@@ -107,23 +114,51 @@ public class LazyTLValidationJob {
 
     private Set<String> requiredCountries;
 
+    /**
+     * Content digests of the TLs as they were last analyzed
+     */
+    private Map<CacheKey, String> analyzedDigests = new ConcurrentHashMap<>();
+
+    /**
+     * Index of TL sources by country and the LOTL parsing results it was built from
+     */
+    private TLCountryIndex countryIndex;
+    private Map<CacheKey, ParsingCacheDTO> indexedParsingCache;
+
     LazyTLValidationJob(Set<String> requiredCountries) {
         this.requiredCountries = requiredCountries;
     }
 
+    /**
+     * Sets the countries whose trusted lists are analyzed by the following refresh
+     * 
+     * @param requiredCountries country codes
+     */
+    synchronized void setRequiredCountries(Set<String> requiredCountries) {
+        this.requiredCountries = requiredCountries;
+    }
+
     public void setTrustedListSources(TLSource... trustedListSources) {
         this.trustedListSources = trustedListSources;
+        this.countryIndex = null;
     }
 
     public void setListOfTrustedListSources(LOTLSource... listOfTrustedListSources) {
         this.listOfTrustedListSources = listOfTrustedListSources;
+        this.countryIndex = null;
     }
 
-    public void setExecutorService(ExecutorService executorService) {
-        if (this.executorService != null && !this.executorService.isShutdown()) {
-            this.executorService.shutdownNow();
-        }
-        this.executorService = executorService;
+    /**
+     * Sets the factory of executors for the analysis tasks
+     * 
+     * New executor is created at the start of each refresh and shut down at its
+     * end, so no threads are left behind between the refreshes.
+     * 
+     * @param executorFactory factory of {@link ExecutorService}
+     */
+    public void setExecutorFactory(Supplier<ExecutorService> executorFactory) {
+        Objects.requireNonNull(executorFactory, "The executorFactory cannot be null");
+        this.executorFactory = executorFactory;
     }
 
     /**
@@ -222,26 +257,34 @@ public class LazyTLValidationJob {
     }
 
     private void refresh(DSSFileLoader dssFileLoader) {
+        executorService = executorFactory.get();
+        try {
+            executeRefresh(dssFileLoader);
+        } finally {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
 
+    private void executeRefresh(DSSFileLoader dssFileLoader) {
         List<TLSource> currentTLSources = new ArrayList<>();
         if (trustedListSources != null) {
             currentTLSources.addAll(Arrays.asList(trustedListSources));
         }
 
         // Execute all LOTLs
+        List<LOTLSource> lotlList = Collections.emptyList();
         if (Utils.isArrayNotEmpty(listOfTrustedListSources)) {
-            final List<LOTLSource> lotlList = Arrays.asList(listOfTrustedListSources);
+            lotlList = Arrays.asList(listOfTrustedListSources);
 
             executeLOTLSourcesAnalysis(lotlList, dssFileLoader);
 
             // Check LOTLs consistency
-
-            // extract TLSources from cached LOTLs
-            currentTLSources.addAll(extractTlSources(lotlList));
         }
 
-        // And then, execute all TLs (manual configs + TLs from LOTLs)
-        executeTLSourcesAnalysis(currentTLSources, dssFileLoader);
+        // And then, execute TLs of the required countries (manual configs + TLs from LOTLs)
+        TLCountryIndex index = getCountryIndex(currentTLSources, lotlList, dssFileLoader);
+        executeTLSourcesAnalysis(index.getSources(requiredCountries), dssFileLoader);
 
         // alerts()
         if (Utils.isCollectionNotEmpty(alerts)) {
@@ -296,9 +339,42 @@ public class LazyTLValidationJob {
         lotlChangeApplier.analyzeAndApply();
     }
 
-    private List<TLSource> extractTlSources(List<LOTLSource> lotlList) {
-        TLSourceBuilder tlSourceBuilder = new TLSourceBuilder(lotlList, extractParsingCache(lotlList));
-        return tlSourceBuilder.build();
+    /**
+     * Returns the index of manual and LOTL TL sources by country
+     * 
+     * The index is rebuilt only when the parsing results of the LOTLs change.
+     */
+    private TLCountryIndex getCountryIndex(List<TLSource> manualSources, List<LOTLSource> lotlList,
+            DSSFileLoader dssFileLoader) {
+        Map<CacheKey, ParsingCacheDTO> parsingCache = extractParsingCache(lotlList);
+        if (countryIndex != null && parsingCache.equals(indexedParsingCache)) {
+            return countryIndex;
+        }
+
+        List<TLSource> sources = new ArrayList<>(manualSources);
+        Map<String, String> territories = new HashMap<>();
+        if (!lotlList.isEmpty()) {
+            // extract TLSources from cached LOTLs
+            TLSourceBuilder tlSourceBuilder = new TLSourceBuilder(lotlList, parsingCache);
+            sources.addAll(tlSourceBuilder.build());
+
+            for (LOTLSource lotlSource : lotlList) {
+                territories.putAll(readPointerTerritories(lotlSource, dssFileLoader));
+            }
+        }
+
+        countryIndex = new TLCountryIndex(sources, territories);
+        indexedParsingCache = parsingCache;
+        return countryIndex;
+    }
+
+    private Map<String, String> readPointerTerritories(LOTLSource lotlSource, DSSFileLoader dssFileLoader) {
+        try (InputStream lotl = dssFileLoader.getDocument(lotlSource.getUrl()).openStream()) {
+            return TLCountryIndex.readPointerTerritories(lotl);
+        } catch (IOException | DSSException e) {
+            // TLs are indexed by their certificates instead
+            return Collections.emptyMap();
+        }
     }
 
     private Map<CacheKey, ParsingCacheDTO> extractParsingCache(List<LOTLSource> lotlSources) {
@@ -307,16 +383,7 @@ public class LazyTLValidationJob {
                 s -> readOnlyCacheAccess.getParsingCacheDTO(s.getCacheKey())));
     }
 
-    private void executeTLSourcesAnalysis(List<TLSource> tlSources, DSSFileLoader dssFileLoader) {
-        List<TLSource> requiredTlSources = tlSources.stream().filter((TLSource source) -> {
-            for (CertificateToken cert : source.getCertificateSource().getCertificates()) {
-                Matcher matcher = canonicalizedCountryPattern.matcher(cert.getCanonicalizedSubject());
-                if (matcher.find() && requiredCountries.contains(matcher.group(1)))
-                    return true;
-            }
-            return false;
-        }).collect(Collectors.toList());
-
+    private void executeTLSourcesAnalysis(List<TLSource> requiredTlSources, DSSFileLoader dssFileLoader) {
         int nbTLSources = requiredTlSources.size();
         if (nbTLSources == 0) {
             return;
@@ -327,7 +394,12 @@ public class LazyTLValidationJob {
         CountDownLatch latch = new CountDownLatch(nbTLSources);
         for (TLSource tlSource : requiredTlSources) {
             final CacheAccessByKey cacheAccess = cacheAccessFactory.getCacheAccess(tlSource.getCacheKey());
-            executorService.submit(new TLAnalysis(tlSource, cacheAccess, dssFileLoader, latch));
+            if (dssFileLoader instanceof ConditionalFileCacheDataLoader) {
+                executorService.submit(() -> executeChangedTLAnalysis(tlSource, cacheAccess,
+                        (ConditionalFileCacheDataLoader) dssFileLoader, latch));
+            } else {
+                executorService.submit(new TLAnalysis(tlSource, cacheAccess, dssFileLoader, latch));
+            }
         }
 
         try {
@@ -337,6 +409,37 @@ public class LazyTLValidationJob {
         }
     }
 
+    /**
+     * Refreshes the TL and analyzes it only if its content changed since the last
+     * analysis
+     */
+    private void executeChangedTLAnalysis(TLSource tlSource, CacheAccessByKey cacheAccess,
+            ConditionalFileCacheDataLoader dssFileLoader, CountDownLatch latch) {
+        try {
+            String digest;
+            try {
+                dssFileLoader.getDocument(tlSource.getUrl());
+                digest = dssFileLoader.getDigest(tlSource.getUrl());
+            } catch (DSSException e) {
+                // Let the analysis record the download error
+                digest = null;
+            }
+
+            if (digest != null && digest.equals(analyzedDigests.get(tlSource.getCacheKey()))
+                    && !cacheAccess.isParsingRefreshNeeded() && !cacheAccess.isValidationRefreshNeeded()) {
+                return;
+            }
+
+            // Analysis counts down its own latch, the shared one is released below on any outcome
+            new TLAnalysis(tlSource, cacheAccess, dssFileLoader, new CountDownLatch(1)).run();
+            if (digest != null) {
+                analyzedDigests.put(tlSource.getCacheKey(), digest);
+            }
+        } finally {
+            latch.countDown();
+        }
+    }
+
     private void synchronizeTLCertificateSource() {
         if (trustedListCertificateSource == null) {
             return;
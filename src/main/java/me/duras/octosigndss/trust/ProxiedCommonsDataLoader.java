@@ -1,18 +1,122 @@
 package me.duras.octosigndss.trust;
 
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
 import eu.europa.esig.dss.model.DSSException;
 import eu.europa.esig.dss.service.http.commons.CommonsDataLoader;
+import eu.europa.esig.dss.utils.Utils;
 
 /**
  * Simple wrapper that sets our own "proxy" for the get requests
+ *
+ * Proxy can be replaced by a local HTTP stand-in serving the same
+ * {@code fetch?url=} requests, set by the system property
+ * {@code octosign.trust.proxy}.
  */
 public class ProxiedCommonsDataLoader extends CommonsDataLoader {
     private static final long serialVersionUID = -906616344684206459L;
 
-    private static final String PROXY_URL = "https://lotl-proxy.octosign.com/";
+    private static final String PROXY_PROPERTY = "octosign.trust.proxy";
+
+    private static final String DEFAULT_PROXY_URL = "https://lotl-proxy.octosign.com/";
+
+    /**
+     * Returns the URL of the proxy fetching the given URL
+     */
+    public static String proxied(String urlString) {
+        String proxyUrl = System.getProperty(PROXY_PROPERTY, DEFAULT_PROXY_URL);
+        if (!proxyUrl.endsWith("/")) {
+            proxyUrl += "/";
+        }
+
+        return proxyUrl + "fetch?url=" + urlString;
+    }
 
     @Override
     protected byte[] httpGet(String urlString) throws DSSException {
-        return super.httpGet(PROXY_URL + "fetch?url=" + urlString);
+        return super.httpGet(proxied(urlString));
+    }
+
+    /**
+     * Downloads the URL through the proxy unless the cached content is current
+     *
+     * @param urlString    the original URL
+     * @param etag         ETag of the cached content or null
+     * @param lastModified Last-Modified of the cached content or null
+     * @return the response or null if the content was not modified
+     */
+    ConditionalResponse conditionalGet(String urlString, String etag, String lastModified) throws IOException {
+        String url = proxied(urlString);
+        HttpGet request = null;
+        CloseableHttpResponse response = null;
+        CloseableHttpClient client = null;
+        try {
+            request = new HttpGet(new URI(url.trim()));
+            if (etag != null) {
+                request.setHeader("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                request.setHeader("If-Modified-Since", lastModified);
+            }
+
+            client = getHttpClient(url);
+            response = getHttpResponse(client, request);
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                return null;
+            }
+            if (status != HttpStatus.SC_OK) {
+                throw new IOException("Unexpected HTTP status " + status);
+            }
+
+            HttpEntity entity = response.getEntity();
+            byte[] content = entity != null ? EntityUtils.toByteArray(entity) : new byte[0];
+            return new ConditionalResponse(content, header(response, "ETag"), header(response, "Last-Modified"));
+        } catch (URISyntaxException | DSSException e) {
+            throw new IOException(String.format("Unable to process GET call for url '%s'", urlString), e);
+        } finally {
+            try {
+                if (request != null) {
+                    request.releaseConnection();
+                }
+                if (response != null) {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                }
+            } finally {
+                Utils.closeQuietly(client);
+            }
+        }
+    }
+
+    private static String header(CloseableHttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * Content of a modified document with its validators
+     */
+    static class ConditionalResponse {
+        final byte[] content;
+
+        final String etag;
+
+        final String lastModified;
+
+        ConditionalResponse(byte[] content, String etag, String lastModified) {
+            this.content = content;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
     }
 }
@@ -0,0 +1,238 @@
+package me.duras.octosigndss.trust;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two-tier cache of downloaded responses
+ *
+ * Responses are kept in a size-bounded in-memory LRU map and in a size-bounded
+ * directory on disk, so they survive the backend process. Each response has
+ * its expiration time, after which it's evicted from both tiers.
+ */
+public class ResponseCache {
+    /**
+     * Expiration time and length preceding the response in each file
+     */
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final File directory;
+
+    private final long maxMemorySize;
+
+    private final long maxDiskSize;
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long memorySize = 0;
+
+    /**
+     * Creates the cache
+     *
+     * @param directory     directory for the disk tier
+     * @param maxMemorySize maximum size of all responses in memory in bytes
+     * @param maxDiskSize   maximum size of all responses on disk in bytes
+     */
+    public ResponseCache(File directory, long maxMemorySize, long maxDiskSize) {
+        this.directory = directory;
+        this.maxMemorySize = maxMemorySize;
+        this.maxDiskSize = maxDiskSize;
+        directory.mkdirs();
+    }
+
+    /**
+     * Returns the cached response if it didn't expire yet
+     *
+     * @param key the response key
+     * @return response or null if not cached
+     */
+    public byte[] get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    return entry.data;
+                }
+
+                removeFromMemory(key);
+            }
+        }
+
+        File file = getFile(key);
+        Entry entry = readFromDisk(file);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= now) {
+            file.delete();
+            return null;
+        }
+
+        // Mark as recently used for the disk eviction
+        file.setLastModified(now);
+        putInMemory(key, entry);
+        return entry.data;
+    }
+
+    /**
+     * Caches the response until its expiration time
+     *
+     * @param key       the response key
+     * @param data      the response
+     * @param expiresAt time in milliseconds after which the response is not used
+     */
+    public void put(String key, byte[] data, long expiresAt) {
+        if (expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+
+        Entry entry = new Entry(data, expiresAt);
+        putInMemory(key, entry);
+        writeToDisk(getFile(key), entry);
+    }
+
+    private synchronized void putInMemory(String key, Entry entry) {
+        removeFromMemory(key);
+        if (entry.data.length > maxMemorySize) {
+            return;
+        }
+
+        memory.put(key, entry);
+        memorySize += entry.data.length;
+
+        Iterator<Map.Entry<String, Entry>> eldest = memory.entrySet().iterator();
+        while (memorySize > maxMemorySize && eldest.hasNext()) {
+            memorySize -= eldest.next().getValue().data.length;
+            eldest.remove();
+        }
+    }
+
+    private synchronized void removeFromMemory(String key) {
+        Entry removed = memory.remove(key);
+        if (removed != null) {
+            memorySize -= removed.data.length;
+        }
+    }
+
+    private Entry readFromDisk(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long expiresAt = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length != file.length() - HEADER_SIZE) {
+                throw new IOException("Length of the cached response doesn't match its file");
+            }
+
+            byte[] data = new byte[length];
+            in.readFully(data);
+            return new Entry(data, expiresAt);
+        } catch (IOException e) {
+            // Broken entry is downloaded again
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(File file, Entry entry) {
+        File temporaryFile = null;
+        try {
+            // Unique name, so concurrent writers of the same response never mix their content
+            temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temporaryFile))) {
+                out.writeLong(entry.expiresAt);
+                out.writeInt(entry.data.length);
+                out.write(entry.data);
+            }
+
+            try {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // Disk tier is optional, the response stays in memory
+            if (temporaryFile != null) {
+                temporaryFile.delete();
+            }
+            return;
+        }
+
+        evictFromDisk();
+    }
+
+    /**
+     * Removes least recently used responses while over the size limit
+     */
+    private synchronized void evictFromDisk() {
+        File[] files = directory.listFiles(f -> f.isFile() && !f.getName().endsWith(".tmp"));
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxDiskSize) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (size <= maxDiskSize) {
+                break;
+            }
+
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+
+            return new File(directory, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        private final byte[] data;
+
+        private final long expiresAt;
+
+        private Entry(byte[] data, long expiresAt) {
+            this.data = data;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package me.duras.octosigndss.trust;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import eu.europa.esig.dss.model.x509.CertificateToken;
+import eu.europa.esig.dss.tsl.source.TLSource;
+
+/**
+ * Index of TL sources by the country they belong to
+ *
+ * Country of a TL is primarily the scheme territory of its pointer in the LOTL.
+ * TLs without a known territory are indexed by the countries of their signing
+ * certificates instead.
+ */
+class TLCountryIndex {
+    private final Map<String, List<TLSource>> sourcesByCountry = new HashMap<>();
+
+    /**
+     * Builds the index
+     *
+     * @param sources          TL sources to index
+     * @param territoriesByUrl scheme territories of the TLs by their location
+     */
+    TLCountryIndex(List<TLSource> sources, Map<String, String> territoriesByUrl) {
+        for (TLSource source : sources) {
+            Set<String> countries = new LinkedHashSet<>();
+            String territory = CountryExtractor.normalize(territoriesByUrl.get(source.getUrl()));
+            if (territory != null) {
+                countries.add(territory);
+            } else if (source.getCertificateSource() != null) {
+                for (CertificateToken certificate : source.getCertificateSource().getCertificates()) {
+                    String country = CountryExtractor.getCountry(certificate);
+                    if (country != null) {
+                        countries.add(country);
+                    }
+                }
+            }
+
+            for (String country : countries) {
+                sourcesByCountry.computeIfAbsent(country, c -> new ArrayList<>()).add(source);
+            }
+        }
+    }
+
+    /**
+     * Returns TL sources of the given countries
+     *
+     * @param countries normalized country codes
+     * @return TL sources without duplicates
+     */
+    List<TLSource> getSources(Set<String> countries) {
+        Set<TLSource> sources = new LinkedHashSet<>();
+        for (String country : countries) {
+            sources.addAll(sourcesByCountry.getOrDefault(country, Collections.emptyList()));
+        }
+
+        return new ArrayList<>(sources);
+    }
+
+    /**
+     * Reads scheme territories of all TL pointers from the LOTL
+     *
+     * @param lotl LOTL document
+     * @return scheme territories by the TSL location
+     */
+    static Map<String, String> readPointerTerritories(InputStream lotl) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        Map<String, String> territories = new HashMap<>();
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(lotl);
+            String location = null;
+            String territory = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("OtherTSLPointer")) {
+                        location = null;
+                        territory = null;
+                    } else if (name.equals("TSLLocation")) {
+                        location = reader.getElementText().trim();
+                    } else if (name.equals("SchemeTerritory")) {
+                        territory = reader.getElementText().trim();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("OtherTSLPointer")
+                        && location != null && territory != null) {
+                    territories.put(location, territory);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to read the LOTL pointers", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing to release
+                }
+            }
+        }
+
+        return territories;
+    }
+}
@@ -0,0 +1,76 @@
+package me.duras.octosigndss.trust;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executors running the LOTL / TL analysis tasks
+ *
+ * Mode is chosen by the system property {@code octosign.tl.executor}:
+ * <ul>
+ * <li>{@code bounded} (default) - fixed pool of daemon threads, sized by
+ * {@code octosign.tl.threads} or by the available processors,</li>
+ * <li>{@code virtual} - one virtual thread per task on JDKs that support them,
+ * bounded pool otherwise,</li>
+ * <li>{@code cached} - unbounded pool of daemon threads.</li>
+ * </ul>
+ */
+public final class TLExecutors {
+    private static final String MODE_PROPERTY = "octosign.tl.executor";
+    private static final String THREADS_PROPERTY = "octosign.tl.threads";
+
+    private TLExecutors() {
+    }
+
+    /**
+     * Returns factory of executors configured by the system properties
+     */
+    public static Supplier<ExecutorService> fromSystemProperties() {
+        String mode = System.getProperty(MODE_PROPERTY, "bounded").toLowerCase(Locale.ENGLISH);
+        int threads = Integer.getInteger(THREADS_PROPERTY, Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+        switch (mode) {
+            case "virtual":
+                return () -> virtual(threads);
+            case "cached":
+                return () -> Executors.newCachedThreadPool(daemonThreadFactory());
+            default:
+                return () -> bounded(threads);
+        }
+    }
+
+    /**
+     * Creates fixed pool of daemon threads
+     *
+     * @param threads maximum number of concurrently running tasks
+     */
+    public static ExecutorService bounded(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), daemonThreadFactory());
+    }
+
+    /**
+     * Creates executor starting a virtual thread per task if supported by the JDK
+     *
+     * @param fallbackThreads size of the bounded pool used otherwise
+     */
+    public static ExecutorService virtual(int fallbackThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return bounded(fallbackThreads);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "tl-analysis-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
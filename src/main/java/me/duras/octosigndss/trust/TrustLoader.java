@@ -2,12 +2,16 @@ package me.duras.octosigndss.trust;
 
 import java.io.File;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
-import eu.europa.esig.dss.service.http.commons.CommonsDataLoader;
-import eu.europa.esig.dss.service.http.commons.FileCacheDataLoader;
+import eu.europa.esig.dss.model.DSSException;
 import eu.europa.esig.dss.spi.client.http.DSSFileLoader;
-import eu.europa.esig.dss.spi.client.http.IgnoreDataLoader;
 import eu.europa.esig.dss.spi.tsl.TrustedListsCertificateSource;
 import eu.europa.esig.dss.spi.x509.CertificateSource;
 import eu.europa.esig.dss.spi.x509.KeyStoreCertificateSource;
@@ -15,26 +19,142 @@ import eu.europa.esig.dss.tsl.cache.CacheCleaner;
 import eu.europa.esig.dss.tsl.function.OfficialJournalSchemeInformationURI;
 import eu.europa.esig.dss.tsl.source.LOTLSource;
 
+/**
+ * Keeps EU Trusted Certificate Lists loaded for the countries required so far
+ *
+ * Validation job and its caches are kept between the loads, so only newly
+ * required countries or expired lists cause another refresh.
+ *
+ * If a {@link TrustMirror} directory is configured, lists are loaded only from
+ * it and never downloaded. Offline loader reads them only from the cache or the
+ * mirror and never refreshes them in the background.
+ *
+ * Once loaded, the lists are refreshed in the background every
+ * {@code octosign.tl.refresh} minutes (120 by default, 0 to refresh when
+ * loading after they expire). Each refresh fills a new certificate source
+ * which then replaces the current one, so validations never wait for the
+ * refresh and keep the source they started with.
+ */
 public class TrustLoader {
-    private static final String LOTL_URL = "https://ec.europa.eu/tools/lotl/eu-lotl.xml";
+    static final String LOTL_URL = "https://ec.europa.eu/tools/lotl/eu-lotl.xml";
     private static final String OJ_URL = "https://eur-lex.europa.eu/legal-content/EN/TXT/?uri=uriserv:OJ.C_.2019.276.01.0001.01.ENG";
-    private final TrustedListsCertificateSource trustedListsCertificateSource = new TrustedListsCertificateSource();
+    private static final long CACHE_EXPIRATION_TIME = 2 * 60 * 60 * 1000;
+    private static final String REFRESH_PROPERTY = "octosign.tl.refresh";
+    private final AtomicReference<TrustedListsCertificateSource> trustedListsCertificateSource = new AtomicReference<>(
+            new TrustedListsCertificateSource());
+    private volatile Set<String> loadedCountries = Collections.emptySet();
+    private final long refreshInterval = Long.getLong(REFRESH_PROPERTY, CACHE_EXPIRATION_TIME / 60000) * 60000;
+    private final File mirror = TrustMirror.getDirectory();
+    private final boolean offline;
+    private final Object refreshLock = new Object();
+    private LazyTLValidationJob job;
+    private volatile long lastRefreshTime;
+    private ScheduledExecutorService refresher;
 
+    public TrustLoader() {
+        this(false);
+    }
+
+    /**
+     * @param offline whether the lists are only read from the cache or the mirror
+     */
+    public TrustLoader(boolean offline) {
+        this.offline = offline;
+    }
+
+    /**
+     * Makes sure the lists of the given countries are loaded
+     *
+     * Blocks only if some of the countries were not loaded yet, or if the lists
+     * expired and the background refresh is disabled.
+     */
     public void load(Set<String> requiredCountries) {
-        LazyTLValidationJob job = new LazyTLValidationJob(requiredCountries);
+        if (isLoaded(requiredCountries)) {
+            return;
+        }
+
+        synchronized (refreshLock) {
+            if (isLoaded(requiredCountries)) {
+                return;
+            }
+
+            Set<String> countries = new HashSet<>(loadedCountries);
+            countries.addAll(requiredCountries);
+            refresh(countries);
+
+            if (refresher == null && refreshInterval > 0 && !offline) {
+                refresher = Executors.newSingleThreadScheduledExecutor(TrustLoader::createRefresherThread);
+                refresher.scheduleWithFixedDelay(this::refreshInBackground, refreshInterval, refreshInterval,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Returns the current source of the trusted certificates
+     *
+     * Returned source is never changed, refresh replaces it by a new one.
+     */
+    public TrustedListsCertificateSource getTrustedCertificateSource() {
+        return this.trustedListsCertificateSource.get();
+    }
+
+    private boolean isLoaded(Set<String> requiredCountries) {
+        boolean expired = refreshInterval <= 0
+                && System.currentTimeMillis() - lastRefreshTime > CACHE_EXPIRATION_TIME;
+        return lastRefreshTime != 0 && !expired && loadedCountries.containsAll(requiredCountries);
+    }
+
+    private void refreshInBackground() {
+        synchronized (refreshLock) {
+            try {
+                refresh(new HashSet<>(loadedCountries));
+            } catch (RuntimeException e) {
+                // Current source stays in use until the next refresh
+                System.err.println("Refresh of the trusted lists failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fills a new certificate source with the lists of the countries and publishes it
+     */
+    private void refresh(Set<String> countries) {
+        if (job == null) {
+            job = createJob();
+        }
+
+        TrustedListsCertificateSource source = new TrustedListsCertificateSource();
+        job.setTrustedListCertificateSource(source);
+        job.setRequiredCountries(new HashSet<>(countries));
+        if (offline) {
+            job.offlineRefresh();
+        } else {
+            job.onlineRefresh();
+        }
+
+        this.trustedListsCertificateSource.set(source);
+        loadedCountries = Collections.unmodifiableSet(countries);
+        lastRefreshTime = System.currentTimeMillis();
+    }
+
+    private static Thread createRefresherThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "tl-refresh");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private LazyTLValidationJob createJob() {
+        LazyTLValidationJob job = new LazyTLValidationJob(new HashSet<>());
         job.setOfflineDataLoader(offlineLoader());
         job.setOnlineDataLoader(onlineLoader());
-        job.setTrustedListCertificateSource(this.trustedListsCertificateSource);
         job.setCacheCleaner(cacheCleaner());
+        job.setExecutorFactory(TLExecutors.fromSystemProperties());
 
         LOTLSource europeanLOTL = europeanLOTL();
         job.setListOfTrustedListSources(europeanLOTL);
 
-        job.onlineRefresh();
-    }
-
-    public TrustedListsCertificateSource getTrustedCertificateSource() {
-        return this.trustedListsCertificateSource;
+        return job;
     }
 
     private LOTLSource europeanLOTL() {
@@ -52,42 +172,45 @@ public class TrustLoader {
         } catch (Exception e) {
             System.err.println("Unable to load EU LOTL Certificate.");
             System.err.println("This is probably due to corrupted installation.");
-            System.exit(1);
-            return null;
+            throw new DSSException("Unable to load EU LOTL Certificate.", e);
         }
     }
 
     private DSSFileLoader offlineLoader() {
-        FileCacheDataLoader offlineFileLoader = new FileCacheDataLoader();
+        ConditionalFileCacheDataLoader offlineFileLoader = new ConditionalFileCacheDataLoader();
         offlineFileLoader.setCacheExpirationTime(Long.MAX_VALUE);
-        offlineFileLoader.setDataLoader(new IgnoreDataLoader());
+        offlineFileLoader.setOffline(true);
         offlineFileLoader.setFileCacheDirectory(tlCacheDirectory());
         return offlineFileLoader;
     }
 
     private DSSFileLoader onlineLoader() {
-        FileCacheDataLoader onlineFileLoader = new FileCacheDataLoader();
-        onlineFileLoader.setCacheExpirationTime(2 * 60 * 60 * 1000);
-        onlineFileLoader.setDataLoader(dataLoader());
+        if (mirror != null || offline) {
+            return offlineLoader();
+        }
+
+        ConditionalFileCacheDataLoader onlineFileLoader = new ConditionalFileCacheDataLoader();
+        onlineFileLoader.setCacheExpirationTime(CACHE_EXPIRATION_TIME);
         onlineFileLoader.setFileCacheDirectory(tlCacheDirectory());
         return onlineFileLoader;
     }
 
     private File tlCacheDirectory() {
+        if (mirror != null) {
+            return mirror;
+        }
+
         File rootFolder = new File(System.getProperty("java.io.tmpdir"));
         File tslCache = new File(rootFolder, "dss-tsl-loader");
         tslCache.mkdirs();
         return tslCache;
     }
 
-    private CommonsDataLoader dataLoader() {
-        return new ProxiedCommonsDataLoader();
-    }
-
     private CacheCleaner cacheCleaner() {
         CacheCleaner cacheCleaner = new CacheCleaner();
         cacheCleaner.setCleanMemory(true);
-        cacheCleaner.setCleanFileSystem(true);
+        // Mirror is changed only by its synchronization, offline loader only reads the cache
+        cacheCleaner.setCleanFileSystem(mirror == null && !offline);
         cacheCleaner.setDSSFileLoader(offlineLoader());
         return cacheCleaner;
     }
@@ -0,0 +1,183 @@
+package me.duras.octosigndss.trust;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.DSSException;
+
+/**
+ * Local directory mirroring the LOTL, its pivots and all TLs it points to
+ *
+ * Mirror has the layout of the cache of the lists, so the {@link TrustLoader}
+ * reads it as its offline cache when its directory is set by the system
+ * property {@code octosign.trust.mirror}. Lists are synchronized by
+ * conditional requests, only the changed ones are downloaded again.
+ */
+public class TrustMirror {
+    private static final String MIRROR_PROPERTY = "octosign.trust.mirror";
+
+    private final File directory;
+
+    /**
+     * @param directory directory of the mirror
+     */
+    public TrustMirror(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the mirror directory configured by the system property
+     *
+     * @return the directory or null if the lists are downloaded as needed
+     */
+    public static File getDirectory() {
+        String path = System.getProperty(MIRROR_PROPERTY);
+        return path == null || path.trim().isEmpty() ? null : new File(path.trim());
+    }
+
+    /**
+     * Downloads the LOTL and then its pivots and TLs in parallel
+     *
+     * @return the synchronization result
+     * @throws IOException if the LOTL itself can't be synchronized
+     */
+    public Result sync() throws IOException {
+        ConditionalFileCacheDataLoader loader = new ConditionalFileCacheDataLoader();
+        loader.setFileCacheDirectory(directory);
+        // Every list is checked, unchanged ones by a conditional request only
+        loader.setCacheExpirationTime(0);
+
+        Set<String> urls;
+        try (InputStream lotl = loader.getDocument(TrustLoader.LOTL_URL).openStream()) {
+            urls = readListLocations(lotl);
+        } catch (DSSException e) {
+            throw new IOException("Unable to synchronize the LOTL", e);
+        }
+        urls.remove(TrustLoader.LOTL_URL);
+
+        Map<String, Future<DSSDocument>> downloads = new LinkedHashMap<>();
+        ExecutorService executor = TLExecutors.fromSystemProperties().get();
+        try {
+            for (String url : urls) {
+                downloads.put(url, executor.submit(() -> loader.getDocument(url)));
+            }
+
+            Result result = new Result();
+            result.synchronizedUrls.add(TrustLoader.LOTL_URL);
+            for (Map.Entry<String, Future<DSSDocument>> download : downloads.entrySet()) {
+                try {
+                    download.getValue().get();
+                    result.synchronizedUrls.add(download.getKey());
+                } catch (ExecutionException e) {
+                    result.failures.put(download.getKey(), e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Synchronization was interrupted", e);
+                }
+            }
+
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads locations of the XML TLs and pivot LOTLs from the LOTL
+     *
+     * @param lotl LOTL document
+     * @return locations in the order of the LOTL
+     */
+    static Set<String> readListLocations(InputStream lotl) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        Set<String> locations = new LinkedHashSet<>();
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(lotl);
+            boolean inSchemeInformationURI = false;
+            String location = null;
+            String mimeType = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("SchemeInformationURI")) {
+                        inSchemeInformationURI = true;
+                    } else if (inSchemeInformationURI && name.equals("URI")) {
+                        // Pivots are the XML documents among the scheme information
+                        String uri = reader.getElementText().trim();
+                        if (uri.endsWith(".xml")) {
+                            locations.add(uri);
+                        }
+                    } else if (name.equals("OtherTSLPointer")) {
+                        location = null;
+                        mimeType = null;
+                    } else if (name.equals("TSLLocation")) {
+                        location = reader.getElementText().trim();
+                    } else if (name.equals("MimeType")) {
+                        mimeType = reader.getElementText().trim();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("SchemeInformationURI")) {
+                        inSchemeInformationURI = false;
+                    } else if (name.equals("OtherTSLPointer") && location != null
+                            && (mimeType == null || mimeType.contains("xml"))) {
+                        locations.add(location);
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to read the LOTL pointers", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing to release
+                }
+            }
+        }
+
+        return locations;
+    }
+
+    /**
+     * Lists synchronized into the mirror and the ones that failed
+     */
+    public static class Result {
+        private final List<String> synchronizedUrls = new ArrayList<>();
+
+        private final Map<String, String> failures = new LinkedHashMap<>();
+
+        public List<String> getSynchronizedUrls() {
+            return synchronizedUrls;
+        }
+
+        /**
+         * Returns errors of the failed lists by their location
+         */
+        public Map<String, String> getFailures() {
+            return failures;
+        }
+    }
+}
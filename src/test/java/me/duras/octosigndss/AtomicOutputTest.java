@@ -0,0 +1,93 @@
+package me.duras.octosigndss;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AtomicOutputTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replacesTarget() throws IOException {
+        Path target = folder.newFile("signed.pdf").toPath();
+        Files.write(target, new byte[] { 1 });
+
+        AtomicOutput.writeStream(target, (out) -> out.write(new byte[] { 2, 3 }));
+
+        assertArrayEquals(new byte[] { 2, 3 }, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void keepsTargetIntactWhenWritingFails() throws IOException {
+        File directory = folder.newFolder();
+        Path target = directory.toPath().resolve("signed.pdf");
+        Files.write(target, new byte[] { 1 });
+
+        try {
+            AtomicOutput.writeStream(target, (out) -> {
+                out.write(new byte[] { 2 });
+                throw new IOException("Disk full");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+
+        assertArrayEquals(new byte[] { 1 }, Files.readAllBytes(target));
+        assertEquals(1, directory.list().length);
+    }
+
+    @Test
+    public void keepsPermissionsOfTarget() throws IOException {
+        Path target = folder.newFile("signed.pdf").toPath();
+        assumeTrue(target.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(target, permissions);
+
+        AtomicOutput.writeStream(target, (out) -> out.write(new byte[] { 2 }));
+
+        assertEquals(permissions, Files.getPosixFilePermissions(target));
+    }
+
+    @Test
+    public void createsTargetWithDefaultPermissions() throws IOException {
+        File directory = folder.newFolder();
+        assumeTrue(directory.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path created = Files.createFile(directory.toPath().resolve("created.pdf"));
+        Path target = directory.toPath().resolve("signed.pdf");
+
+        AtomicOutput.writeStream(target, (out) -> out.write(new byte[] { 2 }));
+
+        assertEquals(Files.getPosixFilePermissions(created), Files.getPosixFilePermissions(target));
+    }
+
+    @Test
+    public void neverReplacesExistingTargetOfNewFile() throws IOException {
+        File directory = folder.newFolder();
+        Path taken = directory.toPath().resolve("signed.pdf");
+        Files.write(taken, new byte[] { 1 });
+
+        Path written = AtomicOutput.writeNew((attempt) -> directory.toPath()
+                .resolve(attempt == 0 ? "signed.pdf" : "signed-" + (attempt + 1) + ".pdf"),
+                AtomicOutput.streamContent((out) -> out.write(new byte[] { 2 })));
+
+        assertEquals(directory.toPath().resolve("signed-2.pdf").toAbsolutePath(), written);
+        assertArrayEquals(new byte[] { 1 }, Files.readAllBytes(taken));
+        assertArrayEquals(new byte[] { 2 }, Files.readAllBytes(written));
+        assertEquals(2, directory.list().length);
+    }
+}
@@ -0,0 +1,64 @@
+package me.duras.octosigndss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class FrameReaderTest {
+    @Test
+    public void readsOperationsAndAnswers() throws Exception {
+        FrameReader reader = reader("{\"type\":\"operation\",\"id\":\"1\",\"args\":[\"verify\",\"/tmp/a\\nb.pdf\"]}\n"
+                + "\n"
+                + "{ \"type\" : \"answer\", \"id\" : \"q1\", \"value\" : \"\\u010dau \u00fa\" }\n"
+                + "{\"type\":\"answer\",\"id\":\"q2\",\"value\":null}");
+
+        FrameReader.Frame operation = reader.next();
+        assertEquals("operation", operation.type);
+        assertEquals("1", operation.id);
+        assertEquals(Arrays.asList("verify", "/tmp/a\nb.pdf"), operation.args);
+
+        FrameReader.Frame answer = reader.next();
+        assertEquals("answer", answer.type);
+        assertEquals("q1", answer.id);
+        assertEquals("\u010dau \u00fa", answer.value);
+
+        FrameReader.Frame empty = reader.next();
+        assertEquals("q2", empty.id);
+        assertNull(empty.value);
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void continuesAfterMalformedFrame() throws Exception {
+        FrameReader reader = reader("{\"type\":\"operation\"\n{\"type\":\"answer\",\"id\":\"q1\",\"value\":\"yes\"}\n");
+
+        try {
+            reader.next();
+        } catch (IOException e) {
+            // Expected, the next line is still readable
+        }
+
+        assertEquals("yes", reader.next().value);
+    }
+
+    @Test
+    public void readsLinesLongerThanBuffer() throws Exception {
+        char[] path = new char[20000];
+        Arrays.fill(path, 'a');
+        FrameReader reader = reader("{\"type\":\"operation\",\"id\":\"1\",\"args\":[\"sign\",\"" + new String(path)
+                + "\"]}\n");
+
+        assertEquals(new String(path), reader.next().args.get(1));
+    }
+
+    private FrameReader reader(String input) {
+        return new FrameReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,57 @@
+package me.duras.octosigndss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+    @Test
+    public void waitsForMemoryOfOtherDocuments() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100 * MemoryBudget.HEAP_PER_BYTE);
+        MemoryBudget.Reservation first = budget.reserve(60);
+
+        CountDownLatch reserved = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            try (MemoryBudget.Reservation reservation = budget.reserve(60)) {
+                reserved.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+
+        assertFalse(reserved.await(100, TimeUnit.MILLISECONDS));
+        first.close();
+        assertTrue(reserved.await(5, TimeUnit.SECONDS));
+        second.join();
+        assertEquals(0, budget.getReserved());
+    }
+
+    @Test
+    public void runsDocumentLargerThanBudgetAlone() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100);
+        MemoryBudget.Reservation first = budget.reserve(10);
+
+        CountDownLatch reserved = new CountDownLatch(1);
+        Thread large = new Thread(() -> {
+            try (MemoryBudget.Reservation reservation = budget.reserve(1000)) {
+                assertEquals(100, budget.getReserved());
+                reserved.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        large.start();
+
+        assertFalse(reserved.await(100, TimeUnit.MILLISECONDS));
+        first.close();
+        assertTrue(reserved.await(5, TimeUnit.SECONDS));
+        large.join();
+        assertEquals(0, budget.getReserved());
+    }
+}
@@ -0,0 +1,69 @@
+package me.duras.octosigndss;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+public class OperationServeTest {
+    @Test(timeout = 10000)
+    public void failsQuestionOutstandingWhenHostClosesInput() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] operation = "{\"type\":\"operation\",\"id\":\"1\",\"args\":[\"sign\",\"/nonexistent/document.pdf\"]}\n"
+                .getBytes(StandardCharsets.UTF_8);
+
+        // Host sends the operation and closes the input once the operation asks for options
+        InputStream input = new InputStream() {
+            private int position = 0;
+
+            @Override
+            public int read() {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0];
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (position < operation.length) {
+                    int read = Math.min(length, operation.length - position);
+                    System.arraycopy(operation, position, buffer, offset, read);
+                    position += read;
+                    return read;
+                }
+
+                while (!output.toString(StandardCharsets.UTF_8).contains("\"type\":\"option")) {
+                    Thread.yield();
+                }
+
+                return -1;
+            }
+        };
+
+        new OperationServe(new Context(new Scanner(""))).runFramed(input,
+                new PrintStream(output, true, StandardCharsets.UTF_8));
+
+        assertTrue(output.toString(StandardCharsets.UTF_8).contains("{\"type\":\"exit\",\"op\":\"1\",\"code\":1}"));
+    }
+
+    @Test(timeout = 10000)
+    public void failsQuestionAskedAfterInputEnded() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FramedRequest.PendingAnswers pendingAnswers = new FramedRequest.PendingAnswers();
+        pendingAnswers.close();
+        FramedRequest request = new FramedRequest(new FrameWriter(new PrintStream(output, true,
+                StandardCharsets.UTF_8)), "1", pendingAnswers);
+
+        try {
+            request.option("tspUrl");
+            fail("Question asked after the input ended was answered");
+        } catch (OperationException e) {
+            // Expected, no answer can arrive anymore
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package me.duras.octosigndss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class OptionCacheTest {
+    @Test
+    public void asksForEachOptionOnceInLinesProtocol() {
+        String answers = "--GETOPTION--\nhttp://tsa.example\n--GETOPTION--\n--GETOPTION--\n\n--GETOPTION--\n"
+                + "--GETOPTION--\nhttp://other.example\n--GETOPTION--\n";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Request request = new Request(new Scanner(answers), new PrintStream(output, true));
+        OptionCache cache = new OptionCache(Arrays.asList("pkcsPath", "tspUrl"));
+
+        assertEquals("http://tsa.example", cache.get(request, "tspUrl"));
+        assertNull(cache.get(request, "pkcsPath"));
+        assertEquals("http://tsa.example", cache.get(request, "tspUrl"));
+        assertNull(cache.get(request, "pkcsPath"));
+        assertEquals("--GETOPTION--\ntspUrl\n--GETOPTION--\n--GETOPTION--\npkcsPath\n--GETOPTION--\n",
+                new String(output.toByteArray(), StandardCharsets.UTF_8).replace("\r", ""));
+
+        cache.invalidate();
+        assertEquals("http://other.example", cache.get(request, "tspUrl"));
+    }
+
+    @Test
+    public void asksForAllOptionsAtOnceIfSupported() {
+        List<List<String>> asked = new ArrayList<>();
+        Request request = new Request(null, null) {
+            @Override
+            public boolean supportsOptions() {
+                return true;
+            }
+
+            @Override
+            public Map<String, String> options(List<String> ids) {
+                asked.add(ids);
+                Map<String, String> values = new HashMap<>();
+                values.put("tspUrl", "http://tsa.example");
+                return values;
+            }
+        };
+        OptionCache cache = new OptionCache(Arrays.asList("pkcsPath", "tspUrl"));
+
+        assertEquals("http://tsa.example", cache.get(request, "tspUrl"));
+        assertNull(cache.get(request, "pkcsPath"));
+        assertEquals(Arrays.asList(Arrays.asList("pkcsPath", "tspUrl")), asked);
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentOperationsWaitForOneQuestion() throws Exception {
+        AtomicInteger asked = new AtomicInteger();
+        CountDownLatch answering = new CountDownLatch(1);
+        CountDownLatch answer = new CountDownLatch(1);
+        Request request = new Request(null, null) {
+            @Override
+            public boolean supportsOptions() {
+                return true;
+            }
+
+            @Override
+            public String option(String id) {
+                return "value of " + id;
+            }
+
+            @Override
+            public Map<String, String> options(List<String> ids) {
+                asked.incrementAndGet();
+                answering.countDown();
+                try {
+                    answer.await();
+                } catch (InterruptedException e) {
+                    throw new OperationException("Operation was interrupted.", e);
+                }
+
+                Map<String, String> values = new HashMap<>();
+                values.put("tspUrl", "http://tsa.example");
+                values.put("pkcsPath", "/usr/lib/pkcs11.so");
+                return values;
+            }
+        };
+        OptionCache cache = new OptionCache(Arrays.asList("pkcsPath", "tspUrl"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> tspUrls = new ArrayList<>();
+            List<Future<String>> pkcsPaths = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                tspUrls.add(executor.submit(() -> cache.get(request, "tspUrl")));
+                pkcsPaths.add(executor.submit(() -> cache.get(request, "pkcsPath")));
+            }
+
+            // Question in progress doesn't block options outside of the cache
+            answering.await();
+            assertEquals("value of language", cache.get(request, "language"));
+            answer.countDown();
+
+            for (Future<String> tspUrl : tspUrls) {
+                assertEquals("http://tsa.example", tspUrl.get());
+            }
+            for (Future<String> pkcsPath : pkcsPaths) {
+                assertEquals("/usr/lib/pkcs11.so", pkcsPath.get());
+            }
+            assertEquals(1, asked.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void asksAgainAfterFailedQuestion() {
+        AtomicInteger asked = new AtomicInteger();
+        Request request = new Request(null, null) {
+            @Override
+            public String option(String id) {
+                if (asked.incrementAndGet() == 1) {
+                    throw new OperationException("Host didn't answer.");
+                }
+
+                return "http://tsa.example";
+            }
+        };
+        OptionCache cache = new OptionCache(Arrays.asList("tspUrl"));
+
+        try {
+            cache.get(request, "tspUrl");
+            fail("Failed question was answered");
+        } catch (OperationException e) {
+            // Expected, the failure is not kept
+        }
+
+        assertEquals("http://tsa.example", cache.get(request, "tspUrl"));
+        assertEquals("http://tsa.example", cache.get(request, "tspUrl"));
+        assertEquals(2, asked.get());
+    }
+}
@@ -0,0 +1,91 @@
+package me.duras.octosigndss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.europa.esig.dss.model.DSSException;
+
+public class PooledTimestampDataLoaderTest {
+    private LocalTSPServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new LocalTSPServer();
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void returnsTimestampResponse() throws Exception {
+        TimeStampRequest request = createRequest();
+
+        byte[] response = new PooledTimestampDataLoader(2, 1, 10).post(server.getUrl(), request.getEncoded());
+
+        TimeStampResponse timestamp = new TimeStampResponse(response);
+        timestamp.validate(request);
+        assertEquals(0, timestamp.getStatus());
+    }
+
+    @Test
+    public void retriesUnavailableTsp() throws Exception {
+        server.failNext(2);
+
+        byte[] response = new PooledTimestampDataLoader(2, 3, 10).post(server.getUrl(), createRequest().getEncoded());
+
+        assertTrue(response.length > 0);
+        assertEquals(3, server.getRequests());
+    }
+
+    @Test(expected = DSSException.class)
+    public void failsAfterLastAttempt() throws Exception {
+        server.failNext(5);
+
+        new PooledTimestampDataLoader(2, 2, 10).post(server.getUrl(), createRequest().getEncoded());
+    }
+
+    @Test
+    public void limitsConcurrentRequests() throws Exception {
+        server.setDelay(50);
+        PooledTimestampDataLoader loader = new PooledTimestampDataLoader(2, 1, 10);
+        byte[] request = createRequest().getEncoded();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> responses = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                responses.add(executor.submit(() -> loader.post(server.getUrl(), request)));
+            }
+            for (Future<byte[]> response : responses) {
+                response.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(8, server.getRequests());
+        assertTrue(server.getMaxInFlight() <= 2);
+    }
+
+    private static TimeStampRequest createRequest() throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(new byte[] { 1, 2, 3 });
+        return new TimeStampRequestGenerator().generate(TSPAlgorithms.SHA256, digest);
+    }
+}
@@ -0,0 +1,77 @@
+package me.duras.octosigndss;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.model.DSSDocument;
+import eu.europa.esig.dss.model.InMemoryDocument;
+
+public class StreamingContainerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void manifestReferencesDigestsOfFiles() throws Exception {
+        Path file = folder.newFile("report.txt").toPath();
+        Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+
+        DSSDocument manifest = StreamingContainer.createManifest(Arrays.asList(file), DigestAlgorithm.SHA256);
+
+        String xml = new String(manifest.openStream().readAllBytes(), StandardCharsets.UTF_8);
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest("content".getBytes(StandardCharsets.UTF_8));
+        assertTrue(xml.contains("URI=\"report.txt\""));
+        assertTrue(xml.contains("<ds:DigestValue>" + Base64.getEncoder().encodeToString(digest)));
+    }
+
+    @Test
+    public void writesMimeTypeFirstAndAllEntries() throws Exception {
+        Path file = folder.newFile("archive.bin").toPath();
+        Files.write(file, new byte[] { 1, 2, 3 });
+        Path output = folder.getRoot().toPath().resolve("archive.sce");
+
+        DSSDocument manifest = StreamingContainer.createManifest(Arrays.asList(file), DigestAlgorithm.SHA256);
+        Map<String, DSSDocument> metadata = new LinkedHashMap<>();
+        metadata.put(StreamingContainer.MANIFEST_NAME, manifest);
+        metadata.put(StreamingContainer.SIGNATURE_NAME, new InMemoryDocument(new byte[] { 9 }));
+        StreamingContainer.write(output, Arrays.asList(file), metadata);
+
+        try (ZipFile zip = new ZipFile(output.toFile())) {
+            List<String> names = new ArrayList<>();
+            zip.stream().forEach((entry) -> names.add(entry.getName()));
+            assertEquals(Arrays.asList("mimetype", "archive.bin", StreamingContainer.MANIFEST_NAME,
+                    StreamingContainer.SIGNATURE_NAME), names);
+            assertEquals(ZipEntry.STORED, zip.getEntry("mimetype").getMethod());
+            assertArrayEquals(new byte[] { 1, 2, 3 }, zip.getInputStream(zip.getEntry("archive.bin")).readAllBytes());
+        }
+    }
+
+    @Test(expected = OperationException.class)
+    public void rejectsDuplicateNames() throws IOException {
+        Path first = folder.newFolder("a").toPath().resolve("same.txt");
+        Path second = folder.newFolder("b").toPath().resolve("same.txt");
+        Files.write(first, new byte[] { 1 });
+        Files.write(second, new byte[] { 2 });
+
+        StreamingContainer.createManifest(Arrays.asList(first, second), DigestAlgorithm.SHA256);
+    }
+}
@@ -0,0 +1,72 @@
+package me.duras.octosigndss.trust;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResponseCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsResponsesOnDiskAcrossInstances() throws IOException {
+        File directory = folder.newFolder();
+        long expiresAt = System.currentTimeMillis() + 60000;
+
+        new ResponseCache(directory, 1024, 1024).put("crl:http://crl.example/ca.crl", new byte[] { 1, 2 }, expiresAt);
+
+        byte[] cached = new ResponseCache(directory, 1024, 1024).get("crl:http://crl.example/ca.crl");
+        assertArrayEquals(new byte[] { 1, 2 }, cached);
+    }
+
+    @Test
+    public void ignoresExpiredResponses() throws IOException {
+        ResponseCache cache = new ResponseCache(folder.newFolder(), 1024, 1024);
+
+        cache.put("expired", new byte[] { 1 }, System.currentTimeMillis() - 1);
+
+        assertNull(cache.get("expired"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedResponsesOverDiskSize() throws IOException {
+        File directory = folder.newFolder();
+        long expiresAt = System.currentTimeMillis() + 60000;
+        // Each entry takes 12 bytes of header and 10 bytes of data
+        ResponseCache cache = new ResponseCache(directory, 0, 50);
+
+        cache.put("first", new byte[10], expiresAt);
+        for (File file : directory.listFiles()) {
+            file.setLastModified(System.currentTimeMillis() - 10000);
+        }
+        cache.put("second", new byte[10], expiresAt);
+        cache.put("third", new byte[10], expiresAt);
+
+        assertNull(cache.get("first"));
+        assertArrayEquals(new byte[10], cache.get("third"));
+    }
+
+    @Test
+    public void treatsResponseWithInvalidLengthAsMissing() throws IOException {
+        File directory = folder.newFolder();
+        long expiresAt = System.currentTimeMillis() + 60000;
+        new ResponseCache(directory, 0, 1024).put("ocsp", new byte[] { 1, 2 }, expiresAt);
+        for (File file : directory.listFiles()) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+                out.writeLong(expiresAt);
+                out.writeInt(Integer.MAX_VALUE);
+                out.write(new byte[] { 1, 2 });
+            }
+        }
+
+        assertNull(new ResponseCache(directory, 0, 1024).get("ocsp"));
+    }
+}
@@ -0,0 +1,42 @@
+package me.duras.octosigndss.trust;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TLCountryIndexTest {
+    private static final String LOTL = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<TrustServiceStatusList xmlns=\"http://uri.etsi.org/02231/v2#\">"
+            + "<SchemeInformation><SchemeTerritory>EU</SchemeTerritory><PointersToOtherTSL>"
+            + "<OtherTSLPointer><TSLLocation>https://tl.example/sk.xml</TSLLocation><AdditionalInformation>"
+            + "<OtherInformation><SchemeTerritory>SK</SchemeTerritory></OtherInformation>"
+            + "</AdditionalInformation></OtherTSLPointer>"
+            + "<OtherTSLPointer><TSLLocation>https://tl.example/el.xml</TSLLocation><AdditionalInformation>"
+            + "<OtherInformation><SchemeTerritory>EL</SchemeTerritory></OtherInformation>"
+            + "</AdditionalInformation></OtherTSLPointer>"
+            + "</PointersToOtherTSL></SchemeInformation></TrustServiceStatusList>";
+
+    @Test
+    public void readsSchemeTerritoriesOfPointers() throws IOException {
+        Map<String, String> territories = TLCountryIndex
+                .readPointerTerritories(new ByteArrayInputStream(LOTL.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, territories.size());
+        assertEquals("SK", territories.get("https://tl.example/sk.xml"));
+        assertEquals("EL", territories.get("https://tl.example/el.xml"));
+    }
+
+    @Test
+    public void normalizesTerritoriesToCountryCodes() {
+        assertEquals("SK", CountryExtractor.normalize("sk"));
+        assertEquals("GR", CountryExtractor.normalize("EL"));
+        assertEquals("GB", CountryExtractor.normalize("UK"));
+        assertNull(CountryExtractor.normalize(" "));
+    }
+}
@@ -0,0 +1,35 @@
+package me.duras.octosigndss.trust;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TrustMirrorTest {
+    private static final String LOTL = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<TrustServiceStatusList xmlns=\"http://uri.etsi.org/02231/v2#\""
+            + " xmlns:ns3=\"http://uri.etsi.org/02231/v2/additionaltypes#\"><SchemeInformation>"
+            + "<SchemeInformationURI><URI xml:lang=\"en\">https://eur-lex.example/oj</URI>"
+            + "<URI xml:lang=\"en\">https://lotl.example/pivot-1.xml</URI></SchemeInformationURI>"
+            + "<PointersToOtherTSL>"
+            + "<OtherTSLPointer><TSLLocation>https://tl.example/sk.xml</TSLLocation><AdditionalInformation>"
+            + "<OtherInformation><ns3:MimeType>application/vnd.etsi.tsl+xml</ns3:MimeType></OtherInformation>"
+            + "</AdditionalInformation></OtherTSLPointer>"
+            + "<OtherTSLPointer><TSLLocation>https://tl.example/sk.pdf</TSLLocation><AdditionalInformation>"
+            + "<OtherInformation><ns3:MimeType>application/pdf</ns3:MimeType></OtherInformation>"
+            + "</AdditionalInformation></OtherTSLPointer>"
+            + "<OtherTSLPointer><TSLLocation>https://tl.example/cz.xml</TSLLocation></OtherTSLPointer>"
+            + "</PointersToOtherTSL></SchemeInformation></TrustServiceStatusList>";
+
+    @Test
+    public void readsPivotsAndXmlListsOfPointers() throws IOException {
+        assertEquals(Arrays.asList("https://lotl.example/pivot-1.xml", "https://tl.example/sk.xml",
+                "https://tl.example/cz.xml"), new ArrayList<>(TrustMirror
+                        .readListLocations(new ByteArrayInputStream(LOTL.getBytes(StandardCharsets.UTF_8)))));
+    }
+}